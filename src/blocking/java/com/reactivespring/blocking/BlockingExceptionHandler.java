@@ -0,0 +1,61 @@
+package com.reactivespring.blocking;
+
+import com.mongodb.MongoTimeoutException;
+import com.reactivespring.exceptions.MovieInfoNotFoundException;
+import com.reactivespring.exceptions.MovieInfoVersionConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.stream.Collectors;
+
+/**
+ * GlobalExceptionHandle for MVC: same status codes and bodies.
+ */
+@ControllerAdvice
+@Slf4j
+public class BlockingExceptionHandler {
+
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<String> handleRequestBodyError(MethodArgumentNotValidException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        var error = ex.getBindingResult().getAllErrors().stream()
+                .map(DefaultMessageSourceResolvable::getDefaultMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+
+    @ExceptionHandler(MovieInfoNotFoundException.class)
+    public ResponseEntity<String> handleMovieInfoNotFound(MovieInfoNotFoundException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(MovieInfoVersionConflictException.class)
+    public ResponseEntity<String> handleVersionConflict(MovieInfoVersionConflictException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(DuplicateKeyException.class)
+    public ResponseEntity<String> handleDuplicateKey(DuplicateKeyException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("MovieInfo already exists");
+    }
+
+    @ExceptionHandler({DataAccessResourceFailureException.class, MongoTimeoutException.class})
+    public ResponseEntity<String> handleMongoUnavailable(RuntimeException ex){
+        log.warn("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("MovieInfo store is busy, retry later");
+    }
+}
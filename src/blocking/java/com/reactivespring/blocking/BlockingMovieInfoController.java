@@ -0,0 +1,77 @@
+package com.reactivespring.blocking;
+
+import com.reactivespring.controller.MovieInfoETags;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoNotFoundException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+import java.util.List;
+
+/**
+ * The CRUD part of MovieInfoController with the same paths, status codes and validation.
+ * Streams, pages, summaries, PATCH and the bulk endpoint only exist on the reactive side.
+ */
+@RestController
+@RequestMapping("/v1")
+public class BlockingMovieInfoController {
+
+    private final BlockingMovieInfoService movieInfoService;
+
+    public BlockingMovieInfoController(BlockingMovieInfoService movieInfoService) {
+        this.movieInfoService = movieInfoService;
+    }
+
+    @PostMapping("/movieinfos")
+    @ResponseStatus(HttpStatus.CREATED)
+    public MovieInfo addMovieInfo(@RequestBody @Valid MovieInfo movieInfo){
+        return movieInfoService.addMovieInfo(movieInfo);
+    }
+
+    @GetMapping("/movieinfos")
+    public List<MovieInfo> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year){
+        return year != null
+                ? movieInfoService.getAllMovieInfosByYear(year)
+                : movieInfoService.getAllMovieInfos();
+    }
+
+    @GetMapping("/movieinfos/movieName")
+    public ResponseEntity<MovieInfo> getMovieInfosByName(@RequestParam(value = "name", required = false) String name){
+        return ResponseEntity.of(movieInfoService.getMovieInfoByName(name));
+    }
+
+    @GetMapping("/movieinfos/{id}")
+    public ResponseEntity<MovieInfo> getMovieById(@PathVariable String id){
+        return movieInfoService.getMovieInfoById(id)
+                .map(BlockingMovieInfoController::okWithETag)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PutMapping("/movieinfos/{id}")
+    public ResponseEntity<MovieInfo> updateMovieById(@RequestBody @Valid MovieInfo updatedMovieInfo, @PathVariable String id,
+                                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        return movieInfoService.updateMovieInfoById(updatedMovieInfo, id, MovieInfoETags.expectedVersions(ifMatch))
+                .map(BlockingMovieInfoController::okWithETag)
+                .orElseThrow(() -> new MovieInfoNotFoundException("MovieInfo Not Found"));
+    }
+
+    @DeleteMapping("/movieinfos/{id}")
+    public void deleteMovieById(@PathVariable String id){
+        movieInfoService.deleteMovieById(id);
+    }
+
+    private static ResponseEntity<MovieInfo> okWithETag(MovieInfo movieInfo) {
+        var builder = ResponseEntity.ok();
+        var eTag = MovieInfoETags.of(movieInfo);
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        if (movieInfo.getLastModified() != null) {
+            builder.lastModified(movieInfo.getLastModified());
+        }
+        return builder.body(movieInfo);
+    }
+}
@@ -0,0 +1,12 @@
+package com.reactivespring.blocking;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface BlockingMovieInfoRepository extends MongoRepository<MovieInfo, String> {
+    List<MovieInfo> findByYear(Integer year);
+    Optional<MovieInfo> findFirstByName(String name);
+}
@@ -0,0 +1,80 @@
+package com.reactivespring.blocking;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoVersionConflictException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Blocking counterpart of MovieInfoService, same writes (versioned findAndModify for updates),
+ * no cache, no timers and no resilience layer.
+ */
+@Service
+public class BlockingMovieInfoService {
+
+    private final BlockingMovieInfoRepository movieInfoRepository;
+    private final MongoTemplate mongoTemplate;
+
+    public BlockingMovieInfoService(BlockingMovieInfoRepository movieInfoRepository, MongoTemplate mongoTemplate) {
+        this.movieInfoRepository = movieInfoRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public MovieInfo addMovieInfo(MovieInfo movieInfo) {
+        // always an insert, a client supplied version would turn save into a versioned update
+        movieInfo.setVersion(null);
+        return movieInfoRepository.save(movieInfo);
+    }
+
+    public List<MovieInfo> getAllMovieInfos() {
+        return movieInfoRepository.findAll();
+    }
+
+    public List<MovieInfo> getAllMovieInfosByYear(Integer year) {
+        return movieInfoRepository.findByYear(year);
+    }
+
+    public Optional<MovieInfo> getMovieInfoById(String id) {
+        return movieInfoRepository.findById(id);
+    }
+
+    public Optional<MovieInfo> getMovieInfoByName(String name) {
+        return movieInfoRepository.findFirstByName(name);
+    }
+
+    /**
+     * Full replacement of the editable fields in one findAndModify. With expectedVersions only those
+     * versions are replaced. Empty when there is no movie info with this id.
+     */
+    public Optional<MovieInfo> updateMovieInfoById(MovieInfo updatedMovieInfo, String id, Set<Long> expectedVersions) {
+        var criteria = Criteria.where("_id").is(id);
+        if (expectedVersions != null) {
+            criteria = criteria.and("version").in(expectedVersions);
+        }
+        var update = new Update()
+                .set("name", updatedMovieInfo.getName())
+                .set("year", updatedMovieInfo.getYear())
+                .set("cast", updatedMovieInfo.getCast())
+                .set("release_date", updatedMovieInfo.getRelease_date())
+                .inc("version", 1)
+                .currentDate("lastModified");
+        var updated = mongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+        if (updated == null && expectedVersions != null && movieInfoRepository.existsById(id)) {
+            throw new MovieInfoVersionConflictException("MovieInfo " + id + " is at none of the versions " + expectedVersions);
+        }
+        return Optional.ofNullable(updated);
+    }
+
+    public void deleteMovieById(String id) {
+        movieInfoRepository.deleteById(id);
+    }
+}
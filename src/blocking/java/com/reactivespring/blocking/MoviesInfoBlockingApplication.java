@@ -0,0 +1,28 @@
+package com.reactivespring.blocking;
+
+import com.reactivespring.config.MongoClientConfig;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.config.EnableMongoAuditing;
+
+/**
+ * The /v1/movieinfos CRUD API on Spring MVC, Tomcat and the synchronous Mongo driver, one
+ * (virtual, on Java 21+) thread per request. Only here to be measured against the WebFlux
+ * application, see ExecutionModeComparison in the loadtest source set.
+ *
+ * Shares the domain, its validation and the movieinfo.mongo client settings with the reactive
+ * application, but none of its components: the scan stops at this package. Always runs with
+ * the blocking profile.
+ */
+@SpringBootApplication
+@Import(MongoClientConfig.class)
+@EnableMongoAuditing
+public class MoviesInfoBlockingApplication {
+
+    public static void main(String[] args) {
+        var application = new SpringApplication(MoviesInfoBlockingApplication.class);
+        application.setAdditionalProfiles("blocking");
+        application.run(args);
+    }
+}
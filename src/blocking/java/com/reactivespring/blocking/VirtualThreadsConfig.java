@@ -0,0 +1,42 @@
+package com.reactivespring.blocking;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every Tomcat request on its own virtual thread instead of the server.tomcat.threads pool.
+ * The sources are compiled for Java 11, so the executor is looked up reflectively and on an older
+ * JVM Tomcat simply keeps its platform thread pool.
+ */
+@Configuration
+@Slf4j
+public class VirtualThreadsConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "movieinfo.blocking.virtual-threads", havingValue = "true", matchIfMissing = true)
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        var executor = virtualThreadPerTaskExecutor();
+        if (executor == null) {
+            log.warn("Virtual threads need Java 21, running on {} with Tomcat's thread pool", Runtime.version());
+            return protocolHandler -> { };
+        }
+        log.info("Tomcat requests run on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Creating the virtual thread executor failed", ex);
+        }
+    }
+}
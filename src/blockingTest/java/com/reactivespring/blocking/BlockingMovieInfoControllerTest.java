@@ -0,0 +1,155 @@
+package com.reactivespring.blocking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoVersionConflictException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// no application context: MoviesInfoBlockingApplication would bring Mongo and its auditing along
+public class BlockingMovieInfoControllerTest {
+
+    private static final String MOVIE_INFO_URL = "/v1/movieinfos";
+
+    private final BlockingMovieInfoService movieInfoServiceMock = mock(BlockingMovieInfoService.class);
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new BlockingMovieInfoController(movieInfoServiceMock))
+                .setControllerAdvice(new BlockingExceptionHandler())
+                .build();
+    }
+
+    private static MovieInfo batmanBegins(String id, Long version) {
+        return new MovieInfo(id, "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                LocalDate.parse("2005-06-15"), version, null);
+    }
+
+    @Test
+    void getAllMovieInfosByYear() throws Exception {
+        when(movieInfoServiceMock.getAllMovieInfosByYear(2005)).thenReturn(List.of(batmanBegins("abc", 0L)));
+
+        mockMvc.perform(get(MOVIE_INFO_URL).param("year", "2005"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+
+        verify(movieInfoServiceMock, never()).getAllMovieInfos();
+    }
+
+    @Test
+    void getMovieInfoById() throws Exception {
+        when(movieInfoServiceMock.getMovieInfoById("abc")).thenReturn(Optional.of(batmanBegins("abc", 4L)));
+
+        mockMvc.perform(get(MOVIE_INFO_URL + "/{id}", "abc"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"4\""))
+                .andExpect(jsonPath("$.name").value("Batman Begins"));
+    }
+
+    @Test
+    void getMovieInfoById_notFound() throws Exception {
+        when(movieInfoServiceMock.getMovieInfoById("def")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get(MOVIE_INFO_URL + "/{id}", "def"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void addNewMovieInfo() throws Exception {
+        when(movieInfoServiceMock.addMovieInfo(isA(MovieInfo.class))).thenReturn(batmanBegins("mockId", 0L));
+
+        mockMvc.perform(post(MOVIE_INFO_URL)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(batmanBegins(null, null))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.movieInfoId").value("mockId"));
+    }
+
+    @Test
+    void addNewMovieInfo_invalid() throws Exception {
+        var movieInfo = new MovieInfo(null, "", -2005, List.of(""), LocalDate.parse("2005-06-15"));
+
+        mockMvc.perform(post(MOVIE_INFO_URL)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(movieInfo)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("MovieInfo.cast must be present,MovieInfo.name must be present,MovieInfo.year must be Positive value"));
+
+        verify(movieInfoServiceMock, never()).addMovieInfo(any());
+    }
+
+    @Test
+    void updateMovieInfo_ifMatch() throws Exception {
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class), eq("abc"), eq(Set.of(3L))))
+                .thenReturn(Optional.of(batmanBegins("abc", 4L)));
+
+        mockMvc.perform(put(MOVIE_INFO_URL + "/{id}", "abc")
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(batmanBegins(null, null))))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"4\""));
+    }
+
+    @Test
+    void updateMovieInfo_versionConflictAndNotFound() throws Exception {
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class), eq("abc"), eq(Set.of(3L))))
+                .thenThrow(new MovieInfoVersionConflictException("MovieInfo abc is no longer at version 3"));
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class), eq("def"), isNull()))
+                .thenReturn(Optional.empty());
+        var body = objectMapper.writeValueAsString(batmanBegins(null, null));
+
+        mockMvc.perform(put(MOVIE_INFO_URL + "/{id}", "abc")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put(MOVIE_INFO_URL + "/{id}", "def")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void updateMovieInfo_invalid() throws Exception {
+        var movieInfo = new MovieInfo(null, "Batman Begins", -2005, List.of("Christian Bale"), null);
+
+        mockMvc.perform(put(MOVIE_INFO_URL + "/{id}", "abc")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(movieInfo)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("MovieInfo.year must be Positive value"));
+
+        verify(movieInfoServiceMock, never()).updateMovieInfoById(any(), any(), any());
+    }
+}
@@ -0,0 +1,90 @@
+package com.reactivespring.blocking;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoVersionConflictException;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlockingMovieInfoServiceTest {
+
+    private final BlockingMovieInfoRepository movieInfoRepository = mock(BlockingMovieInfoRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BlockingMovieInfoService movieInfoService = new BlockingMovieInfoService(movieInfoRepository, mongoTemplate);
+
+    private static MovieInfo batmanBegins(Long version) {
+        return new MovieInfo("abc", "Batman Begins", 2005, List.of("Christian Bale"),
+                LocalDate.parse("2005-06-15"), version, null);
+    }
+
+    private Query findAndModifyQuery() {
+        var query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(MovieInfo.class));
+        return query.getValue();
+    }
+
+    @Test
+    void addMovieInfoIsAlwaysAnInsert() {
+        when(movieInfoRepository.save(any(MovieInfo.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        var saved = movieInfoService.addMovieInfo(batmanBegins(7L));
+
+        assertNull(saved.getVersion());
+    }
+
+    @Test
+    void updateOnlyReplacesTheExpectedVersion() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(MovieInfo.class)))
+                .thenReturn(batmanBegins(4L));
+
+        var updated = movieInfoService.updateMovieInfoById(batmanBegins(null), "abc", Set.of(3L));
+
+        assertEquals(4L, updated.orElseThrow().getVersion());
+        assertEquals(new Document("_id", "abc").append("version", new Document("$in", Set.of(3L))), findAndModifyQuery().getQueryObject());
+    }
+
+    @Test
+    void updateWithoutExpectedVersionOfAMissingMovieIsEmpty() {
+        var updated = movieInfoService.updateMovieInfoById(batmanBegins(null), "abc", null);
+
+        assertTrue(updated.isEmpty());
+        assertEquals(new Document("_id", "abc"), findAndModifyQuery().getQueryObject());
+        verify(movieInfoRepository, never()).existsById(anyString());
+    }
+
+    @Test
+    void updateOfAnotherVersionIsAConflict() {
+        when(movieInfoRepository.existsById("abc")).thenReturn(true);
+
+        assertThrows(MovieInfoVersionConflictException.class,
+                () -> movieInfoService.updateMovieInfoById(batmanBegins(null), "abc", Set.of(3L)));
+    }
+
+    @Test
+    void updateWithExpectedVersionOfAMissingMovieIsEmpty() {
+        when(movieInfoRepository.existsById("abc")).thenReturn(false);
+
+        assertEquals(Optional.empty(), movieInfoService.updateMovieInfoById(batmanBegins(null), "abc", Set.of(3L)));
+    }
+}
@@ -0,0 +1,88 @@
+package com.reactivespring.benchmark;
+
+import com.reactivespring.cache.MovieInfoWatermarks;
+import com.reactivespring.controller.MovieInfoController;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.service.MovieInfoService;
+import com.reactivespring.stream.BackpressurePolicy;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.MovieInfoStreamEncoder;
+import com.reactivespring.stream.MovieInfoStreamSessions;
+import com.reactivespring.stream.StreamSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Request handling of MovieInfoController through the WebFlux dispatcher (routing, argument
+ * resolution, validation, codecs) with a mocked MovieInfoService, no network and no Mongo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MovieInfoControllerBenchmark {
+
+    private WebTestClient webTestClient;
+    private MovieInfo movieInfo;
+
+    @Setup
+    public void setUp() {
+        movieInfo = MovieInfoFixtures.movieInfo("xyz", 5);
+        var catalogue = MovieInfoFixtures.catalogue(100);
+        var movieInfoService = mock(MovieInfoService.class);
+        when(movieInfoService.getMovieInfoById(anyString())).thenReturn(Mono.just(movieInfo));
+        when(movieInfoService.addMovieInfo(any(MovieInfo.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(movieInfoService.getAllMovieInfosByYear(anyInt())).thenReturn(Flux.fromIterable(catalogue));
+        var changeStream = new MovieInfoChangeStream(null, 1000, 256, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        webTestClient = WebTestClient.bindToController(new MovieInfoController(movieInfoService, changeStream,
+                        new MovieInfoWatermarks(changeStream, true), new MovieInfoStreamEncoder(Jackson2ObjectMapperBuilder.json().build(), changeStream),
+                        new MovieInfoStreamSessions(1000, 1000, Duration.ofSeconds(15), Duration.ofSeconds(60), Duration.ZERO),
+                        256, Duration.ZERO))
+                .build();
+    }
+
+    @Benchmark
+    public byte[] getMovieInfoById() {
+        return webTestClient.get().uri("/v1/movieinfos/{id}", "xyz")
+                .exchange()
+                .expectBody()
+                .returnResult()
+                .getResponseBodyContent();
+    }
+
+    @Benchmark
+    public byte[] getAllMovieInfosByYear() {
+        return webTestClient.get().uri("/v1/movieinfos?year=2005")
+                .exchange()
+                .expectBody()
+                .returnResult()
+                .getResponseBodyContent();
+    }
+
+    @Benchmark
+    public byte[] addMovieInfo() {
+        return webTestClient.post().uri("/v1/movieinfos")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectBody()
+                .returnResult()
+                .getResponseBodyContent();
+    }
+}
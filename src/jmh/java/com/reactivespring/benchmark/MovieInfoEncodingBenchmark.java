@@ -0,0 +1,82 @@
+package com.reactivespring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.reactivespring.domain.MovieInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CPU per GET /v1/movieinfos response body (100 movies with 50 cast members each) for every
+ * representation / Content-Encoding combination the service can send. Compression uses level 6,
+ * Netty's default. The mappers come from Boot's Jackson2ObjectMapperBuilder like the service's codecs.
+ * Bytes on the wire per encoding are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieInfoEncodingBenchmark {
+
+    @Param({"json", "json+gzip", "json+deflate", "smile", "smile+gzip"})
+    String encoding;
+
+    private ObjectMapper objectMapper;
+    private boolean gzip;
+    private boolean deflate;
+    private List<MovieInfo> movieInfos;
+    private int bytesOnWire;
+
+    @Setup
+    public void setUp() throws IOException {
+        var builder = MovieInfoFixtures.objectMapperBuilder();
+        objectMapper = encoding.startsWith("smile")
+                ? builder.factory(new SmileFactory()).build()
+                : builder.build();
+        gzip = encoding.endsWith("+gzip");
+        deflate = encoding.endsWith("+deflate");
+        movieInfos = MovieInfoFixtures.catalogue(100);
+        // 50 mostly distinct cast members per movie, identical lists would flatter the compressors
+        for (int i = 0; i < movieInfos.size(); i++) {
+            var cast = new ArrayList<String>(50);
+            for (int j = 0; j < 50; j++) {
+                cast.add("Actor " + ((i * 31 + j * 977) % 20_000));
+            }
+            movieInfos.get(i).setCast(cast);
+        }
+        bytesOnWire = encode().length;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s: %d bytes on the wire%n", encoding, bytesOnWire);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        var bytes = new ByteArrayOutputStream(64 * 1024);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes)
+                : deflate ? new DeflaterOutputStream(bytes, new Deflater(6))
+                : bytes) {
+            objectMapper.writeValue(out, movieInfos);
+        }
+        return bytes.toByteArray();
+    }
+}
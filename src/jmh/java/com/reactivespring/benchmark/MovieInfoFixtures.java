@@ -0,0 +1,47 @@
+package com.reactivespring.benchmark;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+final class MovieInfoFixtures {
+
+    private static final String[] WORDS = {"dark", "knight", "batman", "begins", "rises", "return", "legend",
+            "night", "city", "shadow", "storm", "empire", "last", "first", "lost", "star", "river", "king"};
+
+    private MovieInfoFixtures() {
+    }
+
+    static MovieInfo movieInfo(String id, int castSize) {
+        var cast = new ArrayList<String>(castSize);
+        for (int i = 0; i < castSize; i++) {
+            cast.add("Cast Member " + i);
+        }
+        return new MovieInfo(id, "Batman Begins", 2005, cast, LocalDate.parse("2005-06-15"));
+    }
+
+    // the builder Boot configures (and MovieInfoCodecConfig uses for Smile), not Jackson's plain defaults
+    static Jackson2ObjectMapperBuilder objectMapperBuilder() {
+        try (var context = new AnnotationConfigApplicationContext(JacksonAutoConfiguration.class)) {
+            return context.getBean(Jackson2ObjectMapperBuilder.class);
+        }
+    }
+
+    // deterministic pseudo-random catalogue, names are 2-3 words out of WORDS plus a number
+    static List<MovieInfo> catalogue(int size) {
+        var movieInfos = new ArrayList<MovieInfo>(size);
+        for (int i = 0; i < size; i++) {
+            var name = WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length]
+                    + (i % 3 == 0 ? " " + WORDS[(i * 7) % WORDS.length] : "") + " " + i;
+            movieInfos.add(new MovieInfo(String.valueOf(i), name, 1950 + i % 75,
+                    List.of("Actor " + (i % 1000), "Actress " + (i % 777)),
+                    LocalDate.of(1950 + i % 75, 1 + i % 12, 1 + i % 28)));
+        }
+        return movieInfos;
+    }
+}
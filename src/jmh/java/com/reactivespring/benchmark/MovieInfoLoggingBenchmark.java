@@ -0,0 +1,107 @@
+package com.reactivespring.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.logging.SignalTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a 100 element GET /v1/movieinfos response body with the different logging setups:
+ *
+ * none       - no logging operator at all
+ * log        - the old .log(), formatted and written synchronously on the calling thread
+ * log-async  - the old .log() behind an AsyncAppender
+ * tracer-off - SignalTracer on a request without the trace header (the production default)
+ * tracer-on  - SignalTracer on a traced request, AsyncAppender
+ *
+ * Output goes to a discarding stream, so this measures formatting and hand-off, not the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MovieInfoLoggingBenchmark {
+
+    @Param({"none", "log", "log-async", "tracer-off", "tracer-on"})
+    String mode;
+
+    private LoggerContext loggerContext;
+    private Flux<MovieInfo> movieInfos;
+
+    @Setup
+    public void setUp() {
+        loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.reset();
+
+        var encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d %5p [%t] %logger{36} - %m%n");
+        encoder.start();
+
+        var discard = new OutputStreamAppender<ILoggingEvent>();
+        discard.setContext(loggerContext);
+        discard.setEncoder(encoder);
+        discard.setOutputStream(OutputStream.nullOutputStream());
+        discard.start();
+
+        Appender<ILoggingEvent> appender = discard;
+        if (!"log".equals(mode)) {
+            var async = new AsyncAppender();
+            async.setContext(loggerContext);
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.addAppender(discard);
+            async.start();
+            appender = async;
+        }
+        var root = loggerContext.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(appender);
+
+        var source = Flux.fromIterable(MovieInfoFixtures.catalogue(100));
+        switch (mode) {
+            case "log":
+            case "log-async":
+                movieInfos = source.log();
+                break;
+            case "tracer-off":
+                movieInfos = SignalTracer.trace("getAllMovieInfos", source);
+                break;
+            case "tracer-on":
+                movieInfos = SignalTracer.trace("getAllMovieInfos", source)
+                        .contextWrite(context -> SignalTracer.context(context, "benchmark", true));
+                break;
+            default:
+                movieInfos = source;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        loggerContext.stop();
+    }
+
+    @Benchmark
+    public void getAllMovieInfos(Blackhole blackhole) {
+        movieInfos.subscribe(blackhole::consume);
+    }
+}
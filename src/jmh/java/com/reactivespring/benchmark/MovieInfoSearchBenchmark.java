@@ -0,0 +1,124 @@
+package com.reactivespring.benchmark;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoSearchPage;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.search.MovieInfoSearchIndex;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * GET /v1/movieinfos/search against the Mongo query it replaces: a case-insensitive regex per
+ * token on name and cast, all tokens required, in name order, on an embedded Mongo holding the
+ * same catalogue. A text index is no alternative, it does not match prefixes ("kni").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MovieInfoSearchBenchmark {
+
+    @Param({"10000", "200000"})
+    int catalogueSize;
+
+    private MovieInfoSearchIndex searchIndex;
+    private MongodExecutable mongod;
+    private MongoClient mongoClient;
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Setup
+    public void setUp() throws IOException {
+        var catalogue = MovieInfoFixtures.catalogue(catalogueSize);
+        var movieInfoRepository = mock(MovieInfoRepository.class);
+        when(movieInfoRepository.findAll()).thenReturn(Flux.fromIterable(catalogue));
+        searchIndex = new MovieInfoSearchIndex(movieInfoRepository, null, true, 100, Duration.ofHours(1));
+        searchIndex.rebuild().block();
+
+        var port = Network.getFreeServerPort();
+        mongod = MongodStarter.getDefaultInstance().prepare(MongodConfig.builder()
+                .version(Version.Main.PRODUCTION)
+                .net(new Net(port, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+        mongoClient = MongoClients.create("mongodb://localhost:" + port);
+        mongoTemplate = new ReactiveMongoTemplate(mongoClient, "benchmark");
+        mongoTemplate.insertAll(catalogue).blockLast();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoClient.close();
+        mongod.stop();
+    }
+
+    @Benchmark
+    public MovieInfoSearchPage singleToken() {
+        return searchIndex.search("batman", 0, 20);
+    }
+
+    @Benchmark
+    public List<MovieInfo> singleTokenRegex() {
+        return regexSearch("batman");
+    }
+
+    @Benchmark
+    public MovieInfoSearchPage shortPrefix() {
+        return searchIndex.search("st", 0, 20);
+    }
+
+    @Benchmark
+    public List<MovieInfo> shortPrefixRegex() {
+        return regexSearch("st");
+    }
+
+    @Benchmark
+    public MovieInfoSearchPage tokenAndPrefix() {
+        return searchIndex.search("dark kni", 0, 20);
+    }
+
+    @Benchmark
+    public List<MovieInfo> tokenAndPrefixRegex() {
+        return regexSearch("dark", "kni");
+    }
+
+    // every token starts a word of the name or of a cast member, the first page of 20
+    private List<MovieInfo> regexSearch(String... tokens) {
+        var perToken = new Criteria[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            var pattern = Pattern.compile("\\b" + Pattern.quote(tokens[i]), Pattern.CASE_INSENSITIVE);
+            perToken[i] = new Criteria().orOperator(Criteria.where("name").regex(pattern), Criteria.where("cast").regex(pattern));
+        }
+        var query = new Query(new Criteria().andOperator(perToken))
+                .with(Sort.by("name"))
+                .limit(20);
+        return mongoTemplate.find(query, MovieInfo.class).collectList().block();
+    }
+}
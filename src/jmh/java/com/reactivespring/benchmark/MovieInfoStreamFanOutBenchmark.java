@@ -0,0 +1,61 @@
+package com.reactivespring.benchmark;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.stream.BackpressurePolicy;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.StreamSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing one event to N live /v1/movieinfos/stream subscribers (what
+ * streamMovieInfos pays per POST), subscribers consume synchronously into a Blackhole.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MovieInfoStreamFanOutBenchmark {
+
+    @Param({"1", "100", "1000"})
+    int subscribers;
+
+    private MovieInfoChangeStream changeStream;
+    private MovieInfo movieInfo;
+    private Disposable.Composite subscriptions;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        changeStream = new MovieInfoChangeStream(null, 1000, 256, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        movieInfo = MovieInfoFixtures.movieInfo("xyz", 5);
+        subscriptions = Disposables.composite();
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions.add(changeStream.subscribe(null)
+                    .map(MovieInfoEvent::getMovieInfo)
+                    .subscribe(blackhole::consume));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriptions.dispose();
+    }
+
+    @Benchmark
+    public MovieInfoEvent publish() {
+        return changeStream.publish(MovieInfoChangeType.INSERT, movieInfo);
+    }
+}
@@ -0,0 +1,253 @@
+package com.reactivespring.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reactive (WebFlux, Netty, reactive driver) against blocking (MVC, Tomcat, sync driver, virtual
+ * threads on Java 21+) execution mode. Each application runs as its own JVM with its own
+ * embedded Mongo, one after the other, and gets:
+ *
+ * startup: process start until the first successful GET, which includes starting the embedded
+ * Mongo, the same for both;
+ * memory per connection: growth of the resident set size (Linux only) after comparison.connections
+ * clients each opened a keep-alive connection and made one request, divided by their number;
+ * throughput and latency: a {@link MovieInfoLoadTest} run with the same knobs for both, seeded with
+ * single POSTs and without stream subscribers since the blocking side has neither bulk nor streams.
+ * The blocking side also has no id cache, no coalesced id lookups, no list watermarks and no
+ * search or aggregate index, so the reactive application runs without them too
+ * ({@link #WITHOUT_EXTRAS}). The arguments every mode was started with are in its "settings".
+ *
+ * Started by ./gradlew compareExecutionModes, which passes comparison.java and the two
+ * classpaths. Optional: comparison.connections (1000), comparison.modes ("reactive,blocking"),
+ * comparison.jvm-args ("-Xmx512m") and every loadtest.* property.
+ *
+ * With comparison.startup-only each mode is only started comparison.startup-runs (5) times and
+ * the startup time and resident set size right after it are recorded, min and median.
+ * ./gradlew compareStartupModes runs it that way for the regular application, the fast startup
+ * variant and the fast startup variant on its AppCDS archive (modes faststart, faststart-cds).
+ * {@code comparison.<mode>.jvm-args} are added to comparison.jvm-args for that mode only.
+ */
+public class ExecutionModeComparison {
+
+    private static final Map<String, String> MAIN_CLASSES = Map.of(
+            "reactive", "com.reactivespring.MoviesInfoServiceApplication",
+            "blocking", "com.reactivespring.blocking.MoviesInfoBlockingApplication",
+            "faststart", "com.reactivespring.faststart.MoviesInfoFastStartApplication",
+            "faststart-cds", "com.reactivespring.faststart.MoviesInfoFastStartApplication");
+
+    // measure the execution model, not the load shedding in front of it
+    private static final List<String> COMMON_ARGS = List.of(
+            "--logging.level.root=warn",
+            "--movieinfo.admission.enabled=false");
+
+    // what only the reactive application has, off for the load comparison (startup-only runs keep them)
+    private static final List<String> WITHOUT_EXTRAS = List.of(
+            "--movieinfo.cache.enabled=false",
+            "--movieinfo.batch.coalesce=false",
+            "--movieinfo.watermarks.enabled=false",
+            "--movieinfo.search.enabled=false",
+            "--movieinfo.aggregates.enabled=false");
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(3);
+
+    private final String java = System.getProperty("comparison.java", Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    private final int connections = Integer.getInteger("comparison.connections", 1000);
+    private final List<String> modes = List.of(System.getProperty("comparison.modes", "reactive,blocking").split(","));
+    private final List<String> jvmArgs = List.of(System.getProperty("comparison.jvm-args", "-Xmx512m").split(" "));
+    private final Path output = Path.of(System.getProperty("loadtest.output", "build/loadtest/comparison"));
+    private final boolean startupOnly = Boolean.getBoolean("comparison.startup-only");
+    private final int startupRuns = Integer.getInteger("comparison.startup-runs", 5);
+
+    public static void main(String[] args) throws Exception {
+        new ExecutionModeComparison().run();
+    }
+
+    void run() throws Exception {
+        var results = new LinkedHashMap<String, Object>();
+        results.put("timestamp", Instant.now().toString());
+        results.put("java", java);
+        for (var mode : modes) {
+            results.put(mode.trim(), startupOnly ? measureStartup(mode.trim()) : measure(mode.trim()));
+        }
+
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        var json = objectMapper.writeValueAsString(results);
+        Files.createDirectories(output);
+        Files.writeString(output.resolve("comparison.json"), json);
+        System.out.println(json);
+    }
+
+    private Map<String, Object> measure(String mode) throws Exception {
+        var directory = Files.createDirectories(output.resolve(mode));
+        var settings = new ArrayList<>(COMMON_ARGS);
+        if (!"blocking".equals(mode)) {
+            settings.addAll(WITHOUT_EXTRAS);
+        }
+        var port = freePort();
+        var started = System.nanoTime();
+        var process = start(mode, port, directory.resolve("server.log"), settings);
+        try {
+            var baseUrl = "http://localhost:" + port + "/v1/movieinfos";
+            var result = new LinkedHashMap<String, Object>();
+            result.put("settings", settings);
+            result.put("startupMillis", awaitStartup(baseUrl, process, started));
+            result.put("rssBytesPerConnection", rssPerConnection(baseUrl, process.pid()));
+            result.put("load", new MovieInfoLoadTest(baseUrl, directory, 0, false).run());
+            result.put("rssBytesAfterLoad", rss(process.pid()));
+            return result;
+        } finally {
+            stop(process);
+        }
+    }
+
+    private Map<String, Object> measureStartup(String mode) throws Exception {
+        var directory = Files.createDirectories(output.resolve(mode));
+        var startupMillis = new ArrayList<Long>();
+        var rssBytes = new ArrayList<Long>();
+        for (int run = 0; run < startupRuns; run++) {
+            var port = freePort();
+            var started = System.nanoTime();
+            var process = start(mode, port, directory.resolve("server-" + run + ".log"), COMMON_ARGS);
+            try {
+                startupMillis.add(awaitStartup("http://localhost:" + port + "/v1/movieinfos", process, started));
+                rssBytes.add(rss(process.pid()));
+            } finally {
+                stop(process);
+            }
+        }
+        var result = new LinkedHashMap<String, Object>();
+        result.put("settings", COMMON_ARGS);
+        result.put("startupMillis", startupMillis);
+        result.put("startupMillisMin", Collections.min(startupMillis));
+        result.put("startupMillisMedian", median(startupMillis));
+        result.put("rssBytesAfterStartup", rssBytes);
+        result.put("rssBytesAfterStartupMedian", median(rssBytes));
+        return result;
+    }
+
+    private Process start(String mode, int port, Path log, List<String> settings) throws IOException {
+        var classpath = System.getProperty("comparison." + mode + ".classpath");
+        if (classpath == null || !MAIN_CLASSES.containsKey(mode)) {
+            throw new IllegalArgumentException("No classpath or main class for mode " + mode);
+        }
+        var command = new ArrayList<String>();
+        command.add(java);
+        command.addAll(jvmArgs);
+        var modeJvmArgs = System.getProperty("comparison." + mode + ".jvm-args", "").trim();
+        if (!modeJvmArgs.isEmpty()) {
+            command.addAll(List.of(modeJvmArgs.split(" ")));
+        }
+        command.addAll(List.of("-cp", classpath, MAIN_CLASSES.get(mode), "--server.port=" + port));
+        command.addAll(settings);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    private static long median(List<Long> values) {
+        var sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static long awaitStartup(String baseUrl, Process process, long started) {
+        var webClient = WebClient.create(baseUrl);
+        var deadline = started + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Server exited during startup with " + process.exitValue());
+            }
+            var up = webClient.get().uri("?year=1")
+                    .retrieve()
+                    .toBodilessEntity()
+                    .map(response -> true)
+                    .onErrorReturn(false)
+                    .block(Duration.ofSeconds(5));
+            if (Boolean.TRUE.equals(up)) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+        }
+        throw new IllegalStateException("Server did not start within " + STARTUP_TIMEOUT);
+    }
+
+    // -1 where /proc is not available
+    private long rssPerConnection(String baseUrl, long pid) throws IOException {
+        var before = rss(pid);
+        var provider = ConnectionProvider.builder("comparison")
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .maxIdleTime(Duration.ofMinutes(10))
+                .build();
+        var webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+                .build();
+        try {
+            // the body is only read after a while, so no request can hand its connection to
+            // another and all of them stay open (idle, keep-alive) afterwards
+            Flux.range(0, connections)
+                    .flatMap(i -> webClient.get().uri("?year=1")
+                            .exchangeToMono(response -> Mono.delay(Duration.ofSeconds(2)).then(response.releaseBody())), connections)
+                    .blockLast(Duration.ofMinutes(2));
+            var after = rss(pid);
+            return before < 0 || after < 0 ? -1 : (after - before) / connections;
+        } finally {
+            provider.disposeLater().block(Duration.ofSeconds(30));
+        }
+    }
+
+    private static long rss(long pid) throws IOException {
+        var status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) {
+            return -1;
+        }
+        return Files.readAllLines(status).stream()
+                .filter(line -> line.startsWith("VmRSS:"))
+                .map(line -> line.replaceAll("[^0-9]", ""))
+                .mapToLong(kilobytes -> Long.parseLong(kilobytes) * 1024)
+                .findFirst()
+                .orElse(-1);
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
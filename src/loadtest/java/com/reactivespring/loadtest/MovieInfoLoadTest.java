@@ -0,0 +1,329 @@
+package com.reactivespring.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.reactivespring.MoviesInfoServiceApplication;
+import com.reactivespring.domain.BulkIngestResult;
+import com.reactivespring.domain.MovieInfo;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Closed-loop HTTP load test: boots the whole service on the embedded Mongo, seeds a catalogue
+ * through the bulk endpoint, then keeps {@code loadtest.concurrency} requests in flight, picking
+ * GET by id / list by year / POST / PUT according to {@code loadtest.mix}, while
+ * {@code loadtest.stream-subscribers} clients follow /v1/movieinfos/stream. GETs read the seeded
+ * catalogue, PUTs update seeded movies and the latest ones POSTed during the run alike.
+ * The service runs with the loadtest profile only (application-loadtest.yml).
+ *
+ * System properties (all optional):
+ * loadtest.duration (s, 60), loadtest.warmup (s, 10), loadtest.concurrency (64),
+ * loadtest.mix ("getById=70,listByYear=15,post=10,put=5"), loadtest.stream-subscribers (10),
+ * loadtest.catalogue (10000), loadtest.output (directory), loadtest.revision (label for the results)
+ */
+public class MovieInfoLoadTest {
+
+    enum Operation {
+        GET_BY_ID("getById"),
+        LIST_BY_YEAR("listByYear"),
+        POST("post"),
+        PUT("put");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+    }
+
+    // one minute in microseconds, 3 significant digits
+    private static final long HIGHEST_TRACKABLE_MICROS = 60_000_000L;
+
+    private final Duration duration = Duration.ofSeconds(Long.getLong("loadtest.duration", 60));
+    private final Duration warmup = Duration.ofSeconds(Long.getLong("loadtest.warmup", 10));
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 64);
+    private final int streamSubscribers;
+    private final int catalogueSize = Integer.getInteger("loadtest.catalogue", 10000);
+    private final String revision = System.getProperty("loadtest.revision", "unknown");
+    private final Path output;
+    private final boolean bulkSeed;
+    private final Map<Operation, Integer> mix = parseMix(System.getProperty("loadtest.mix", "getById=70,listByYear=15,post=10,put=5"));
+
+    private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+    private final AtomicLongArray errors = new AtomicLongArray(Operation.values().length);
+    private final AtomicLong streamEvents = new AtomicLong();
+    private final List<String> ids = new ArrayList<>();
+    // the last catalogue-size ids POSTed during the run, a ring
+    private final AtomicReferenceArray<String> created;
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final WebClient webClient;
+
+    MovieInfoLoadTest(String baseUrl) {
+        this(baseUrl, Path.of(System.getProperty("loadtest.output", "build/loadtest")),
+                Integer.getInteger("loadtest.stream-subscribers", 10), true);
+    }
+
+    /**
+     * bulkSeed false seeds with one POST per movie, for servers without the bulk endpoint.
+     */
+    MovieInfoLoadTest(String baseUrl, Path output, int streamSubscribers, boolean bulkSeed) {
+        this.output = output;
+        this.streamSubscribers = streamSubscribers;
+        this.bulkSeed = bulkSeed;
+        this.created = new AtomicReferenceArray<>(Math.max(1, catalogueSize));
+        var connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(concurrency + streamSubscribers + 8)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .build();
+        for (var operation : Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        var application = new SpringApplication(MoviesInfoServiceApplication.class);
+        // instead of the local profile application.yml activates
+        try (var context = application.run("--spring.profiles.active=loadtest", "--server.port=0")) {
+            var port = context.getEnvironment().getProperty("local.server.port");
+            new MovieInfoLoadTest("http://localhost:" + port + "/v1/movieinfos").run();
+        }
+    }
+
+    Map<String, Object> run() throws IOException {
+        seed();
+
+        var streams = Disposables.composite();
+        for (int i = 0; i < streamSubscribers; i++) {
+            streams.add(followStream());
+        }
+
+        var warmupEnd = System.nanoTime() + warmup.toNanos();
+        var end = warmupEnd + duration.toNanos();
+        var recording = Flux.interval(warmup)
+                .take(1)
+                .subscribe(tick -> {
+                    histograms.values().forEach(Histogram::reset);
+                    for (int i = 0; i < errors.length(); i++) {
+                        errors.set(i, 0);
+                    }
+                    streamEvents.set(0);
+                });
+
+        Flux.range(0, concurrency)
+                .flatMap(worker -> Mono.defer(this::request).repeat(() -> System.nanoTime() < end), concurrency)
+                .blockLast();
+
+        recording.dispose();
+        streams.dispose();
+        return report(Duration.ofNanos(System.nanoTime() - warmupEnd));
+    }
+
+    private void seed() {
+        var body = Flux.range(0, catalogueSize).map(MovieInfoLoadTest::newMovieInfo);
+        if (!bulkSeed) {
+            body.flatMap(movieInfo -> webClient.post().uri("").bodyValue(movieInfo)
+                            .retrieve()
+                            .bodyToMono(MovieInfo.class), concurrency)
+                    .doOnNext(movieInfo -> ids.add(movieInfo.getMovieInfoId()))
+                    .blockLast(Duration.ofMinutes(10));
+        } else {
+            seedWithBulk(body);
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("Seeding the catalogue failed");
+        }
+    }
+
+    private void seedWithBulk(Flux<MovieInfo> body) {
+        webClient.post().uri("/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body, MovieInfo.class)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(BulkIngestResult.class)
+                .filter(BulkIngestResult::isAccepted)
+                .doOnNext(result -> ids.add(result.getMovieInfoId()))
+                .blockLast(Duration.ofMinutes(10));
+    }
+
+    private Disposable followStream() {
+        return webClient.get().uri("/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(MovieInfo.class)
+                .subscribe(movieInfo -> streamEvents.incrementAndGet(), ex -> { });
+    }
+
+    private Mono<Void> request() {
+        var operation = pick();
+        var random = ThreadLocalRandom.current();
+        Mono<Void> call;
+        switch (operation) {
+            case GET_BY_ID:
+                call = webClient.get().uri("/{id}", ids.get(random.nextInt(ids.size())))
+                        .retrieve().toBodilessEntity().then();
+                break;
+            case LIST_BY_YEAR:
+                call = webClient.get().uri("?year={year}", 1950 + random.nextInt(75))
+                        .retrieve().toBodilessEntity().then();
+                break;
+            case POST:
+                call = webClient.post().uri("").bodyValue(newMovieInfo(random.nextInt(1_000_000)))
+                        .retrieve().bodyToMono(MovieInfo.class)
+                        .doOnNext(movieInfo -> created.set((int) (createdCount.getAndIncrement() % created.length()), movieInfo.getMovieInfoId()))
+                        .then();
+                break;
+            default:
+                var id = pickForUpdate(random);
+                call = webClient.put().uri("/{id}", id).bodyValue(newMovieInfo(random.nextInt(1_000_000)))
+                        .retrieve().toBodilessEntity().then();
+        }
+        var started = System.nanoTime();
+        return call
+                .doOnSuccess(unused -> record(operation, started))
+                .onErrorResume(ex -> {
+                    errors.incrementAndGet(operation.ordinal());
+                    return Mono.empty();
+                });
+    }
+
+    private void record(Operation operation, long started) {
+        var micros = Math.min((System.nanoTime() - started) / 1000, HIGHEST_TRACKABLE_MICROS);
+        histograms.get(operation).recordValue(micros);
+    }
+
+    // uniformly among the seeded and the remembered created ids
+    private String pickForUpdate(ThreadLocalRandom random) {
+        var createdIds = (int) Math.min(createdCount.get(), created.length());
+        var index = random.nextInt(ids.size() + createdIds);
+        if (index < ids.size()) {
+            return ids.get(index);
+        }
+        var id = created.get(index - ids.size());
+        // claimed by a POST that has not stored its id yet
+        return id != null ? id : ids.get(random.nextInt(ids.size()));
+    }
+
+    private Operation pick() {
+        var total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        var roll = ThreadLocalRandom.current().nextInt(total);
+        for (var entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.GET_BY_ID;
+    }
+
+    private Map<String, Object> report(Duration measured) throws IOException {
+        Files.createDirectories(output);
+        var seconds = measured.toNanos() / 1e9;
+        var cores = Runtime.getRuntime().availableProcessors();
+
+        var operations = new LinkedHashMap<String, Object>();
+        var total = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        long totalErrors = 0;
+        for (var operation : Operation.values()) {
+            var histogram = histograms.get(operation);
+            total.add(histogram);
+            totalErrors += errors.get(operation.ordinal());
+            operations.put(operation.key, summary(histogram, errors.get(operation.ordinal()), seconds, cores));
+            try (var out = new PrintStream(output.resolve(operation.key + ".hgrm").toFile())) {
+                // microseconds recorded, milliseconds printed
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+
+        var results = new LinkedHashMap<String, Object>();
+        results.put("revision", revision);
+        results.put("timestamp", Instant.now().toString());
+        results.put("cores", cores);
+        results.put("durationSeconds", seconds);
+        results.put("concurrency", concurrency);
+        results.put("catalogue", ids.size());
+        results.put("created", createdCount.get());
+        results.put("mix", mix.entrySet().stream().collect(Collectors.toMap(entry -> entry.getKey().key, Map.Entry::getValue)));
+        results.put("total", summary(total, totalErrors, seconds, cores));
+        results.put("operations", operations);
+        results.put("stream", Map.of("subscribers", streamSubscribers, "eventsReceived", streamEvents.get()));
+
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        var json = objectMapper.writeValueAsString(results);
+        Files.writeString(output.resolve("results.json"), json);
+        Files.writeString(output.resolve("results-" + revision + ".json"), json);
+        System.out.println(json);
+        return results;
+    }
+
+    private static Map<String, Object> summary(Histogram histogram, long errors, double seconds, int cores) {
+        var summary = new LinkedHashMap<String, Object>();
+        var rps = histogram.getTotalCount() / seconds;
+        summary.put("count", histogram.getTotalCount());
+        summary.put("errors", errors);
+        summary.put("rps", rps);
+        summary.put("rpsPerCore", rps / cores);
+        summary.put("p50Micros", histogram.getValueAtPercentile(50));
+        summary.put("p99Micros", histogram.getValueAtPercentile(99));
+        summary.put("p999Micros", histogram.getValueAtPercentile(99.9));
+        summary.put("maxMicros", histogram.getMaxValue());
+        return summary;
+    }
+
+    private static MovieInfo newMovieInfo(int i) {
+        return new MovieInfo(null, "Load Test Movie " + i, 1950 + i % 75,
+                List.of("Actor " + (i % 1000), "Actress " + (i % 777)),
+                LocalDate.of(1950 + i % 75, 1 + i % 12, 1 + i % 28));
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        var weights = new EnumMap<Operation, Integer>(Operation.class);
+        for (var part : mix.split(",")) {
+            var keyValue = part.trim().split("=");
+            for (var operation : Operation.values()) {
+                if (operation.key.equals(keyValue[0].trim())) {
+                    weights.put(operation, Integer.parseInt(keyValue[1].trim()));
+                }
+            }
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("loadtest.mix must have at least one positive weight: " + mix);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,154 @@
+package com.reactivespring.admission;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for the /v1 endpoints: reads, writes and long-lived responses each get their
+ * own {@link ConcurrencyLimit}, so a slow Mongo shrinks the read and write limits instead of
+ * letting requests queue behind it, and a crowd of exports cannot take the slots of short
+ * requests. Full lists (all movies, all summaries) take as long as the collection is big, so they
+ * get a fixed limit of their own and never count as slow reads. The change stream subscriptions
+ * (/stream, /stream/events) are left to MovieInfoStreamSessions, the one limit on them.
+ *
+ * Over the limit a read, list or write gets 503 and a stream 429, both with Retry-After, before
+ * any work is done. Runs after AccessLogWebFilter and Boot's MetricsWebFilter
+ * (HIGHEST_PRECEDENCE + 1) so rejected requests still get a request id, an access log line and
+ * an http.server.requests sample.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class AdmissionControlWebFilter implements WebFilter, MeterBinder {
+
+    public enum Budget {
+        READ,
+        WRITE,
+        LIST,
+        STREAM
+    }
+
+    private final boolean enabled;
+    private final String retryAfter;
+    private final Map<Budget, ConcurrencyLimit> limits = new EnumMap<>(Budget.class);
+
+    public AdmissionControlWebFilter(@Value("${movieinfo.admission.enabled:true}") boolean enabled,
+                                     @Value("${movieinfo.admission.read.initial-limit:200}") int readInitialLimit,
+                                     @Value("${movieinfo.admission.read.max-limit:1000}") int readMaxLimit,
+                                     @Value("${movieinfo.admission.read.latency-threshold:250ms}") Duration readLatencyThreshold,
+                                     @Value("${movieinfo.admission.write.initial-limit:50}") int writeInitialLimit,
+                                     @Value("${movieinfo.admission.write.max-limit:200}") int writeMaxLimit,
+                                     @Value("${movieinfo.admission.write.latency-threshold:500ms}") Duration writeLatencyThreshold,
+                                     @Value("${movieinfo.admission.min-limit:10}") int minLimit,
+                                     @Value("${movieinfo.admission.backoff-ratio:0.9}") double backoffRatio,
+                                     @Value("${movieinfo.admission.list.max-concurrent:100}") int listMaxConcurrent,
+                                     @Value("${movieinfo.admission.stream.max-concurrent:100}") int streamMaxConcurrent,
+                                     @Value("${movieinfo.admission.retry-after:1s}") Duration retryAfter) {
+        this.enabled = enabled;
+        this.retryAfter = Long.toString(Math.max(1, retryAfter.toSeconds()));
+        limits.put(Budget.READ, new ConcurrencyLimit(readInitialLimit, minLimit, readMaxLimit,
+                readLatencyThreshold.toNanos(), TimeUnit.NANOSECONDS, backoffRatio));
+        limits.put(Budget.WRITE, new ConcurrencyLimit(writeInitialLimit, minLimit, writeMaxLimit,
+                writeLatencyThreshold.toNanos(), TimeUnit.NANOSECONDS, backoffRatio));
+        limits.put(Budget.LIST, ConcurrencyLimit.fixed(listMaxConcurrent));
+        limits.put(Budget.STREAM, ConcurrencyLimit.fixed(streamMaxConcurrent));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var budget = budgetOf(exchange);
+        if (!enabled || budget == null) {
+            return chain.filter(exchange);
+        }
+        var limit = limits.get(budget);
+        var inFlight = limit.tryAcquire();
+        if (inFlight < 0) {
+            var response = exchange.getResponse();
+            response.setStatusCode(budget == Budget.STREAM ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+            return response.setComplete();
+        }
+        var started = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signalType -> {
+                    if (budget == Budget.STREAM || budget == Budget.LIST || signalType == SignalType.CANCEL) {
+                        // a stream's or full list's duration says nothing about load, and a cancel is not a sample
+                        limit.release();
+                        return;
+                    }
+                    var status = exchange.getResponse().getRawStatusCode();
+                    var dropped = signalType == SignalType.ON_ERROR || (status != null && status >= 500);
+                    limit.release(inFlight, System.nanoTime() - started, dropped);
+                });
+    }
+
+    public ConcurrencyLimit getLimit(Budget budget) {
+        return limits.get(budget);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        limits.forEach((budget, limit) -> {
+            var tag = budget.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("movieinfo.admission.limit", limit, ConcurrencyLimit::getLimit)
+                    .description("Current concurrency limit")
+                    .tag("budget", tag)
+                    .register(registry);
+            Gauge.builder("movieinfo.admission.inflight", limit, ConcurrencyLimit::getInFlight)
+                    .description("Requests holding a slot")
+                    .tag("budget", tag)
+                    .register(registry);
+            FunctionCounter.builder("movieinfo.admission.rejected", limit, ConcurrencyLimit::getRejected)
+                    .description("Requests rejected over the limit")
+                    .tag("budget", tag)
+                    .register(registry);
+        });
+    }
+
+    // null for everything outside /v1 (actuator, FluxAndMonoController demos) and the change streams
+    static Budget budgetOf(ServerWebExchange exchange) {
+        var request = exchange.getRequest();
+        var path = request.getPath().pathWithinApplication().value();
+        if (!path.startsWith("/v1/")) {
+            return null;
+        }
+        // limited per node and per client by MovieInfoStreamSessions
+        if (path.endsWith("/stream") || path.endsWith("/stream/events")) {
+            return null;
+        }
+        // bulk ingest and NDJSON exports run for as long as the client keeps sending or reading
+        if (path.endsWith("/bulk") || request.getHeaders().getAccept().contains(MediaType.APPLICATION_NDJSON)) {
+            return Budget.STREAM;
+        }
+        // a read, POST only to carry the ids
+        if (path.endsWith("/movieinfos/batch")) {
+            return Budget.READ;
+        }
+        var method = request.getMethod();
+        // as long as the collection, with or without a year
+        if (method == HttpMethod.GET && (path.equals("/v1/movieinfos") || path.equals("/v1/movieinfos/summaries"))) {
+            return Budget.LIST;
+        }
+        return method == HttpMethod.GET || method == HttpMethod.HEAD ? Budget.READ : Budget.WRITE;
+    }
+}
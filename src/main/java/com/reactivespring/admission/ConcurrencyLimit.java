@@ -0,0 +1,97 @@
+package com.reactivespring.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency limit adjusted by AIMD (additive increase, multiplicative decrease), the
+ * simplest of the Netflix concurrency-limits algorithms.
+ *
+ * A request that failed, or took longer than {@code latencyThreshold}, counts as a drop and
+ * shrinks the limit to {@code limit * backoffRatio}. Any other request that completed while the
+ * limit was at least half used grows it by one. The limit stays within [minLimit, maxLimit];
+ * with minLimit == maxLimit it is a plain fixed limit.
+ */
+public class ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    // written under the lock, read without it
+    private volatile int limit;
+
+    public ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThreshold, TimeUnit unit, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Concurrency limit needs 1 <= minLimit <= maxLimit, got " + minLimit + ", " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public static ConcurrencyLimit fixed(int limit) {
+        return new ConcurrencyLimit(limit, limit, limit, Long.MAX_VALUE, TimeUnit.NANOSECONDS, 1.0);
+    }
+
+    /**
+     * Takes a slot, returns the number of requests in flight including this one, or -1 when
+     * the limit is reached.
+     */
+    public int tryAcquire() {
+        while (true) {
+            var current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Gives back a slot taken by {@link #tryAcquire()}. inFlightAtStart is what tryAcquire
+     * returned, rttNanos the time the request took. A cancelled request should use
+     * {@link #release()} so it does not move the limit.
+     */
+    public void release(int inFlightAtStart, long rttNanos, boolean dropped) {
+        inFlight.decrementAndGet();
+        if (dropped || rttNanos > latencyThresholdNanos) {
+            decrease();
+        } else if (inFlightAtStart * 2 >= limit) {
+            increase();
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private synchronized void decrease() {
+        limit = Math.max(minLimit, (int) (limit * backoffRatio));
+    }
+
+    private synchronized void increase() {
+        limit = Math.min(maxLimit, limit + 1);
+    }
+}
@@ -0,0 +1,285 @@
+package com.reactivespring.aggregate;
+
+import com.reactivespring.domain.CastAppearances;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoYearAggregate;
+import com.reactivespring.domain.MovieInfoYearCount;
+import com.reactivespring.exceptions.AggregatesNotReadyException;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Per-year movie counts, top cast members and release month histograms, kept in memory and
+ * updated incrementally from {@link MovieInfoChangeStream}, so every write that reaches the
+ * stream (add, update, delete, bulk, and other nodes' writes with the MONGO source) is counted.
+ *
+ * Each movie's contribution is remembered by id, which makes applying an event an idempotent
+ * upsert / remove. A full rebuild from Mongo runs at startup, every {@code rebuild-interval} and
+ * whenever the event sequence has a gap; events arriving while it runs are replayed on the new
+ * state before it is swapped in. A year's answer is built once per change and then served as is.
+ */
+@Component
+@Slf4j
+public class MovieInfoAggregates {
+
+    private final MovieInfoRepository movieInfoRepository;
+    private final MovieInfoChangeStream movieInfoChangeStream;
+    private final boolean enabled;
+    private final int topCast;
+    private final Duration rebuildInterval;
+
+    // guarded by this
+    private State state = new State();
+    // non-null while a rebuild is loading, guarded by this
+    private List<MovieInfoEvent> pending;
+
+    private final AtomicLong lastSequence = new AtomicLong();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+    private volatile boolean ready;
+
+    public MovieInfoAggregates(MovieInfoRepository movieInfoRepository,
+                               MovieInfoChangeStream movieInfoChangeStream,
+                               @Value("${movieinfo.aggregates.enabled:true}") boolean enabled,
+                               @Value("${movieinfo.aggregates.top-cast:10}") int topCast,
+                               @Value("${movieinfo.aggregates.rebuild-interval:1h}") Duration rebuildInterval) {
+        this.movieInfoRepository = movieInfoRepository;
+        this.movieInfoChangeStream = movieInfoChangeStream;
+        this.enabled = enabled;
+        this.topCast = topCast;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // follow the change stream before the first rebuild so nothing written during it is missed
+        lastSequence.set(movieInfoChangeStream.getHeadSequence());
+        subscriptions.add(Flux.defer(() -> movieInfoChangeStream.subscribe(lastSequence.get()))
+                .doOnNext(this::onEvent)
+                .retry()
+                .subscribe());
+        subscriptions.add(Flux.interval(Duration.ZERO, rebuildInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> rebuild()
+                        .onErrorResume(ex -> {
+                            log.error("Rebuilding the movie info aggregates failed", ex);
+                            return Mono.empty();
+                        }))
+                .subscribe());
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public synchronized List<MovieInfoYearCount> counts() {
+        checkReady();
+        return state.years.values().stream()
+                .map(year -> new MovieInfoYearCount(year.year, year.count))
+                .collect(Collectors.toList());
+    }
+
+    public synchronized MovieInfoYearAggregate forYear(int year) {
+        checkReady();
+        var yearState = state.years.get(year);
+        if (yearState == null) {
+            return new MovieInfoYearAggregate(year, 0, List.of(), Collections.nCopies(12, 0L), 0);
+        }
+        return yearState.snapshot(topCast);
+    }
+
+    public synchronized void apply(MovieInfoEvent event) {
+        state.apply(event);
+        if (pending != null) {
+            pending.add(event);
+        }
+    }
+
+    /**
+     * Reloads everything from Mongo and swaps the result in. A no-op while another rebuild runs.
+     */
+    public Mono<Void> rebuild() {
+        return Mono.defer(() -> {
+            if (!rebuilding.compareAndSet(false, true)) {
+                return Mono.<Void>empty();
+            }
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            var fresh = new State();
+            return movieInfoRepository.findAll()
+                    .doOnNext(fresh::upsert)
+                    .then(Mono.<Void>fromRunnable(() -> {
+                        synchronized (this) {
+                            pending.forEach(fresh::apply);
+                            pending = null;
+                            state = fresh;
+                        }
+                        ready = true;
+                        log.info("Movie info aggregates rebuilt, {} movies in {} years", fresh.documents.size(), fresh.years.size());
+                    }))
+                    .doFinally(signalType -> {
+                        synchronized (this) {
+                            pending = null;
+                        }
+                        rebuilding.set(false);
+                    });
+        });
+    }
+
+    private void onEvent(MovieInfoEvent event) {
+        var gap = event.getSequence() > lastSequence.getAndSet(event.getSequence()) + 1;
+        apply(event);
+        if (gap) {
+            log.info("Movie info aggregates missed events before sequence {}, rebuilding", event.getSequence());
+            rebuild().subscribe(null, ex -> log.error("Rebuilding the movie info aggregates failed", ex));
+        }
+    }
+
+    private void checkReady() {
+        if (!ready) {
+            throw new AggregatesNotReadyException("Movie info aggregates are still loading");
+        }
+    }
+
+    // not thread safe, only used under the MovieInfoAggregates lock or before it is published
+    private static final class State {
+        private final Map<String, Contribution> documents = new HashMap<>();
+        private final Map<Integer, YearState> years = new TreeMap<>();
+
+        void apply(MovieInfoEvent event) {
+            // carries no movie, the jump in sequence to it (from the resent movies' 0) starts a rebuild
+            if (event.getType() == MovieInfoChangeType.RESYNC) {
+                return;
+            }
+            if (event.getType() == MovieInfoChangeType.DELETE) {
+                remove(event.getMovieInfo().getMovieInfoId());
+            } else {
+                upsert(event.getMovieInfo());
+            }
+        }
+
+        void upsert(MovieInfo movieInfo) {
+            var id = movieInfo.getMovieInfoId();
+            if (id == null) {
+                return;
+            }
+            remove(id);
+            if (movieInfo.getYear() == null) {
+                return;
+            }
+            var contribution = new Contribution(movieInfo);
+            documents.put(id, contribution);
+            years.computeIfAbsent(contribution.year, YearState::new).add(contribution);
+        }
+
+        void remove(String id) {
+            var contribution = id == null ? null : documents.remove(id);
+            if (contribution == null) {
+                return;
+            }
+            var yearState = years.get(contribution.year);
+            yearState.subtract(contribution);
+            if (yearState.count == 0) {
+                years.remove(contribution.year);
+            }
+        }
+    }
+
+    private static final class Contribution {
+        private final int year;
+        private final List<String> cast;
+        // 0-11, -1 without a release date
+        private final int releaseMonth;
+
+        Contribution(MovieInfo movieInfo) {
+            this.year = movieInfo.getYear();
+            this.cast = movieInfo.getCast() == null ? List.of() : List.copyOf(new LinkedHashSet<>(movieInfo.getCast()));
+            this.releaseMonth = movieInfo.getRelease_date() == null ? -1 : movieInfo.getRelease_date().getMonthValue() - 1;
+        }
+    }
+
+    private static final class YearState {
+        private final int year;
+        private long count;
+        private final Map<String, Long> cast = new HashMap<>();
+        private final long[] releaseMonths = new long[12];
+        private long withoutReleaseDate;
+        // built on the first read after a change
+        private MovieInfoYearAggregate snapshot;
+
+        YearState(int year) {
+            this.year = year;
+        }
+
+        void add(Contribution contribution) {
+            count++;
+            contribution.cast.forEach(member -> cast.merge(member, 1L, Long::sum));
+            if (contribution.releaseMonth < 0) {
+                withoutReleaseDate++;
+            } else {
+                releaseMonths[contribution.releaseMonth]++;
+            }
+            snapshot = null;
+        }
+
+        void subtract(Contribution contribution) {
+            count--;
+            contribution.cast.forEach(member -> cast.computeIfPresent(member, (key, appearances) -> appearances > 1 ? appearances - 1 : null));
+            if (contribution.releaseMonth < 0) {
+                withoutReleaseDate--;
+            } else {
+                releaseMonths[contribution.releaseMonth]--;
+            }
+            snapshot = null;
+        }
+
+        MovieInfoYearAggregate snapshot(int topCast) {
+            if (snapshot == null) {
+                var top = cast.entrySet().stream()
+                        .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                                .thenComparing(Map.Entry.comparingByKey()))
+                        .limit(topCast)
+                        .map(entry -> new CastAppearances(entry.getKey(), entry.getValue()))
+                        .collect(Collectors.toUnmodifiableList());
+                var months = Arrays.stream(releaseMonths).boxed().collect(Collectors.toUnmodifiableList());
+                snapshot = new MovieInfoYearAggregate(year, count, top, months, withoutReleaseDate);
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.reactivespring.domain.CacheStatistics;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of MovieInfo by id, sitting in front of MovieInfoRepository.findById.
+ *
+ * Concurrent misses for the same id share one load. Unknown ids are cached as empty for the
+ * (shorter) negative ttl so repeated 404s don't reach Mongo either. The write path keeps it
+ * current through {@link #put(MovieInfo)} and {@link #invalidate(String)}.
+ *
+ * Every movie info loaded or put is also kept as a stale copy for {@code stale-ttl}, well past
+ * the ttl, for {@link #getStale(String)} to answer with when Mongo is unavailable.
+ *
+ * Hit / miss / eviction counts are published as the {@code cache.*} meters with cache=movieInfoById.
+ */
+@Component
+public class MovieInfoCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final AsyncCache<String, Optional<MovieInfo>> cache;
+    private final Cache<String, MovieInfo> stale;
+
+    public MovieInfoCache(@Value("${movieinfo.cache.enabled:true}") boolean enabled,
+                          @Value("${movieinfo.cache.maximum-size:10000}") long maximumSize,
+                          @Value("${movieinfo.cache.ttl:5m}") Duration ttl,
+                          @Value("${movieinfo.cache.negative-ttl:10s}") Duration negativeTtl,
+                          @Value("${movieinfo.cache.stale-ttl:1h}") Duration staleTtl) {
+        this.enabled = enabled;
+        this.stale = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(staleTtl)
+                .build();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Optional<MovieInfo>>() {
+                    @Override
+                    public long expireAfterCreate(String id, Optional<MovieInfo> movieInfo, long currentTime) {
+                        return (movieInfo.isPresent() ? ttl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String id, Optional<MovieInfo> movieInfo, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, movieInfo, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String id, Optional<MovieInfo> movieInfo, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    public Mono<MovieInfo> get(String id, Function<String, Mono<MovieInfo>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        return Mono.fromFuture(() -> cache.get(id, (key, executor) -> load(key, loader)))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * {@link #get} for many ids: the ones not cached (or being loaded) are handed to the loader
+     * together, which only has to return the movie infos that exist. The result has an entry for
+     * each id that exists.
+     */
+    public Mono<Map<String, MovieInfo>> getAll(List<String> ids, Function<List<String>, Flux<MovieInfo>> loader) {
+        if (!enabled) {
+            return loader.apply(ids).collectMap(MovieInfo::getMovieInfoId);
+        }
+        return Mono.fromFuture(() -> cache.getAll(ids, (keys, executor) -> loadAll(keys, loader)))
+                .map(entries -> {
+                    var movieInfos = new HashMap<String, MovieInfo>();
+                    entries.forEach((id, movieInfo) -> movieInfo.ifPresent(found -> movieInfos.put(id, found)));
+                    return movieInfos;
+                });
+    }
+
+    /**
+     * The last movie info seen for this id within stale-ttl, however old. Empty once it was
+     * invalidated.
+     */
+    public Mono<MovieInfo> getStale(String id) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.fromSupplier(() -> stale.getIfPresent(id));
+    }
+
+    public Map<String, MovieInfo> getAllStale(List<String> ids) {
+        return enabled ? stale.getAllPresent(ids) : Map.of();
+    }
+
+    public void put(MovieInfo movieInfo) {
+        if (enabled && movieInfo.getMovieInfoId() != null) {
+            cache.put(movieInfo.getMovieInfoId(), CompletableFuture.completedFuture(Optional.of(movieInfo)));
+            stale.put(movieInfo.getMovieInfoId(), movieInfo);
+        }
+    }
+
+    public void invalidate(String id) {
+        if (enabled && id != null) {
+            cache.synchronous().invalidate(id);
+            stale.invalidate(id);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+        stale.invalidateAll();
+    }
+
+    public CacheStatistics statistics() {
+        var stats = cache.synchronous().stats();
+        return new CacheStatistics(cache.synchronous().estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.evictionCount(), stats.hitRate());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache.synchronous(), "movieInfoById", Tags.empty()).bindTo(registry);
+    }
+
+    private CompletableFuture<Optional<MovieInfo>> load(String id, Function<String, Mono<MovieInfo>> loader) {
+        return loader.apply(id)
+                .doOnNext(movieInfo -> stale.put(id, movieInfo))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    // unknown ids are cached as empty, like in load
+    private CompletableFuture<Map<String, Optional<MovieInfo>>> loadAll(Iterable<? extends String> keys,
+                                                                        Function<List<String>, Flux<MovieInfo>> loader) {
+        var ids = new ArrayList<String>();
+        keys.forEach(ids::add);
+        return loader.apply(ids)
+                .doOnNext(movieInfo -> stale.put(movieInfo.getMovieInfoId(), movieInfo))
+                .collectMap(MovieInfo::getMovieInfoId, Optional::of)
+                .map(found -> {
+                    Map<String, Optional<MovieInfo>> entries = new HashMap<>(found);
+                    ids.forEach(id -> entries.putIfAbsent(id, Optional.empty()));
+                    return entries;
+                })
+                .toFuture();
+    }
+}
@@ -0,0 +1,140 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoWatermark;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.StreamSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collection level validators for the movie info lists: a watermark per year that moves on
+ * every write to that year, and one for the whole collection that moves on every write.
+ *
+ * Fed from {@link MovieInfoChangeStream}. Inserts only move their own year. Deletes carry no
+ * year and an update may have moved a movie out of another year, so both move every year,
+ * as does a gap in the event sequence. The tags include a per-process id so they never
+ * survive a restart, and are weak since every representation of a list shares them.
+ *
+ * Off by default (movieinfo.watermarks.enabled), the lists then go without validators. With the
+ * LOCAL stream source only this node's writes move the watermarks, so a write through another
+ * node would get a stale list a 304: only turn them on with LOCAL for a single node.
+ */
+@Component
+@Slf4j
+public class MovieInfoWatermarks {
+
+    private final MovieInfoChangeStream movieInfoChangeStream;
+    private final boolean enabled;
+
+    private final String processId = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final AtomicLong counter = new AtomicLong();
+    private final AtomicLong lastSequence = new AtomicLong();
+    private final Map<Integer, Stamp> years = new ConcurrentHashMap<>();
+    private volatile Stamp epoch = new Stamp(0, Instant.now());
+    private volatile Stamp latest = epoch;
+
+    private Disposable subscription;
+
+    public MovieInfoWatermarks(MovieInfoChangeStream movieInfoChangeStream,
+                               @Value("${movieinfo.watermarks.enabled:false}") boolean enabled) {
+        this.movieInfoChangeStream = movieInfoChangeStream;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (movieInfoChangeStream.getSource() != StreamSource.MONGO) {
+            log.warn("List watermarks only see this node's writes with movieinfo.stream.source={}, "
+                    + "other nodes' writes can get stale lists a 304", movieInfoChangeStream.getSource());
+        }
+        subscription = Flux.defer(() -> {
+                    var from = movieInfoChangeStream.getHeadSequence();
+                    lastSequence.set(from);
+                    // whatever happened before (re)subscribing is unknown
+                    moveAll();
+                    return movieInfoChangeStream.subscribe(from);
+                })
+                .doOnNext(this::apply)
+                .retry()
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Watermark of the movie infos of {@code year}, or of all of them when year is null.
+     * Take it before querying, so the tag is never newer than the data it is sent with.
+     * Null when watermarks are disabled.
+     */
+    public MovieInfoWatermark forYear(Integer year) {
+        if (!enabled) {
+            return null;
+        }
+        Stamp stamp;
+        if (year == null) {
+            stamp = latest;
+        } else {
+            // year before epoch: moveAll sets the epoch before it clears the years
+            var yearStamp = years.get(year);
+            var epochStamp = epoch;
+            stamp = yearStamp != null && yearStamp.value > epochStamp.value ? yearStamp : epochStamp;
+        }
+        return new MovieInfoWatermark("W/\"" + processId + "." + stamp.value + "\"", stamp.at);
+    }
+
+    private void apply(MovieInfoEvent event) {
+        var expected = lastSequence.getAndSet(event.getSequence()) + 1;
+        // a RESYNC carries no movie
+        var year = event.getMovieInfo() == null ? null : event.getMovieInfo().getYear();
+        if (event.getSequence() != expected || event.getType() != MovieInfoChangeType.INSERT || year == null) {
+            moveAll();
+        } else {
+            var stamp = next();
+            years.put(year, stamp);
+            latest = stamp;
+        }
+    }
+
+    private void moveAll() {
+        var stamp = next();
+        epoch = stamp;
+        latest = stamp;
+        years.clear();
+    }
+
+    private Stamp next() {
+        return new Stamp(counter.incrementAndGet(), Instant.now());
+    }
+
+    private static final class Stamp {
+        private final long value;
+        private final Instant at;
+
+        Stamp(long value, Instant at) {
+            this.value = value;
+            this.at = at;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.reactivespring.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
+
+/**
+ * Fills MovieInfo.lastModified on repository writes. findAndModify and bulk writes bypass
+ * auditing and set it themselves.
+ */
+@Configuration
+@EnableReactiveMongoAuditing
+public class MongoAuditingConfig {
+}
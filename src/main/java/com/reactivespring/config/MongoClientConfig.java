@@ -0,0 +1,43 @@
+package com.reactivespring.config;
+
+import com.mongodb.MongoClientSettings;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies {@link MovieInfoMongoProperties} to the client Spring Boot builds from
+ * spring.data.mongodb.*. A full pool makes callers wait at most pool.max-wait-time, then the
+ * driver's MongoTimeoutException is answered with 503 by GlobalExceptionHandle.
+ */
+@Configuration
+@EnableConfigurationProperties({MovieInfoMongoProperties.class, MovieInfoResilienceProperties.class})
+public class MongoClientConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer movieInfoMongoClientSettings(MovieInfoMongoProperties properties) {
+        return builder -> apply(properties, builder);
+    }
+
+    private static void apply(MovieInfoMongoProperties properties, MongoClientSettings.Builder builder) {
+        var pool = properties.getPool();
+        builder.applyToConnectionPoolSettings(settings -> settings
+                        .maxSize(pool.getMaxSize())
+                        .minSize(pool.getMinSize())
+                        .maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                        .maxConnectionIdleTime(pool.getMaxConnectionIdleTime().toMillis(), TimeUnit.MILLISECONDS)
+                        .maxConnectionLifeTime(pool.getMaxConnectionLifeTime().toMillis(), TimeUnit.MILLISECONDS))
+                .applyToSocketSettings(settings -> settings
+                        .connectTimeout((int) properties.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                        .readTimeout((int) properties.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                .applyToClusterSettings(settings -> settings
+                        .serverSelectionTimeout(properties.getServerSelectionTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                .readPreference(properties.toReadPreference())
+                .writeConcern(properties.toWriteConcern())
+                .retryWrites(properties.isRetryWrites())
+                .retryReads(properties.isRetryReads());
+    }
+}
@@ -0,0 +1,30 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Smile (binary JSON) for clients sending Accept: application/x-jackson-smile.
+ *
+ * WebFlux registers Smile codecs on its own once jackson-dataformat-smile is on the classpath,
+ * but with a plain ObjectMapper; these use Boot's Jackson settings so dates and nulls come out
+ * the same as in the JSON representation. Both representations share a (weak) ETag, responses
+ * carry Vary: Accept so caches keep them apart.
+ */
+@Configuration
+public class MovieInfoCodecConfig {
+
+    @Bean
+    public CodecCustomizer smileCodecCustomizer(Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
+        var smileMapper = jackson2ObjectMapperBuilder.factory(new SmileFactory()).build();
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileMapper));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper));
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package com.reactivespring.config;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoQueries;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the indexes declared on {@link MovieInfo} before the web server starts taking
+ * traffic, then asks Mongo to explain each repository query and complains about any that
+ * would still scan the whole collection. The queries come from {@link MovieInfoQueries}, the same
+ * ones the repositories run, mapped the way the template maps them.
+ */
+@Component
+@Slf4j
+public class MovieInfoIndexInitializer implements SmartInitializingSingleton {
+
+    public enum PlanCheck {
+        OFF,
+        WARN,
+        FAIL
+    }
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MongoMappingContext mongoMappingContext;
+    private final boolean createIndexes;
+    private final PlanCheck planCheck;
+
+    public MovieInfoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate,
+                                     MongoMappingContext mongoMappingContext,
+                                     @Value("${movieinfo.indexes.create:true}") boolean createIndexes,
+                                     @Value("${movieinfo.indexes.plan-check:WARN}") PlanCheck planCheck) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.mongoMappingContext = mongoMappingContext;
+        this.createIndexes = createIndexes;
+        this.planCheck = planCheck;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (createIndexes) {
+            ensureIndexes().block(STARTUP_TIMEOUT);
+        }
+        if (planCheck != PlanCheck.OFF) {
+            var problems = checkQueryPlans().block(STARTUP_TIMEOUT);
+            if (problems != null && !problems.isEmpty()) {
+                problems.forEach(problem -> log.warn("MovieInfo query plan: {}", problem));
+                if (planCheck == PlanCheck.FAIL) {
+                    throw new IllegalStateException("MovieInfo queries without a usable index: " + problems);
+                }
+            }
+        }
+    }
+
+    public Mono<Void> ensureIndexes() {
+        var indexOps = reactiveMongoTemplate.indexOps(MovieInfo.class);
+        var resolver = new MongoPersistentEntityIndexResolver(mongoMappingContext);
+        return Flux.fromIterable(resolver.resolveIndexFor(MovieInfo.class))
+                .concatMap(indexOps::ensureIndex)
+                .doOnNext(name -> log.info("Ensured MovieInfo index {}", name))
+                .then();
+    }
+
+    public Mono<List<String>> checkQueryPlans() {
+        var checks = List.of(
+                new PlanCheckQuery("findByYear", MovieInfoQueries.byYear(0), false),
+                new PlanCheckQuery("findByName", MovieInfoQueries.byName(""), false),
+                new PlanCheckQuery("findPage(year)", MovieInfoQueries.page(0, null, 100), false),
+                new PlanCheckQuery("findPage", MovieInfoQueries.page(null, null, 100), false),
+                new PlanCheckQuery("findSummaries(year)", MovieInfoQueries.summaries(0), true));
+        return Flux.fromIterable(checks)
+                .concatMap(check -> explain(check).map(plan -> problemsOf(check, plan)))
+                .collectList()
+                .map(lists -> {
+                    var problems = new ArrayList<String>();
+                    lists.forEach(problems::addAll);
+                    return problems;
+                });
+    }
+
+    private Mono<Document> explain(PlanCheckQuery check) {
+        var entity = mongoMappingContext.getRequiredPersistentEntity(MovieInfo.class);
+        var queryMapper = new QueryMapper(reactiveMongoTemplate.getConverter());
+        var query = check.query;
+        var find = new Document("find", reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .append("filter", queryMapper.getMappedObject(query.getQueryObject(), entity));
+        if (!query.getSortObject().isEmpty()) {
+            find.append("sort", queryMapper.getMappedSort(query.getSortObject(), entity));
+        }
+        if (!query.getFieldsObject().isEmpty()) {
+            find.append("projection", queryMapper.getMappedFields(query.getFieldsObject(), entity));
+        }
+        if (query.getHint() != null) {
+            find.append("hint", query.getHint());
+        }
+        if (query.getLimit() > 0) {
+            find.append("limit", query.getLimit());
+        }
+        return reactiveMongoTemplate.executeCommand(new Document("explain", find).append("verbosity", "queryPlanner"))
+                .map(result -> result.get("queryPlanner", Document.class).get("winningPlan", Document.class));
+    }
+
+    private static List<String> problemsOf(PlanCheckQuery check, Document winningPlan) {
+        var stages = new ArrayList<String>();
+        collectStages(winningPlan, stages);
+        var problems = new ArrayList<String>();
+        if (stages.contains("COLLSCAN")) {
+            problems.add(check.name + " is a COLLSCAN " + stages);
+        }
+        if (check.covered && stages.contains("FETCH")) {
+            problems.add(check.name + " is not covered by its index " + stages);
+        }
+        return problems;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectStages(Document plan, List<String> stages) {
+        if (plan == null) {
+            return;
+        }
+        stages.add(plan.getString("stage"));
+        collectStages(plan.get("inputStage", Document.class), stages);
+        var inputStages = plan.get("inputStages", List.class);
+        if (inputStages != null) {
+            inputStages.forEach(stage -> collectStages((Document) stage, stages));
+        }
+    }
+
+    private static class PlanCheckQuery {
+        private final String name;
+        private final Query query;
+        private final boolean covered;
+
+        PlanCheckQuery(String name, Query query, boolean covered) {
+            this.name = name;
+            this.query = query;
+            this.covered = covered;
+        }
+    }
+}
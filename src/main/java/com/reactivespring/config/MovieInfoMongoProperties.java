@@ -0,0 +1,88 @@
+package com.reactivespring.config;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * movieinfo.mongo: pool, timeouts, read preference and write concern of the reactive Mongo
+ * client. The defaults are the production ones, profiles only override what differs.
+ */
+@Data
+@ConfigurationProperties(prefix = "movieinfo.mongo")
+public class MovieInfoMongoProperties {
+
+    private Pool pool = new Pool();
+
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    // 0s waits forever, change stream tailing relies on the server side await instead
+    private Duration readTimeout = Duration.ofSeconds(0);
+
+    private Duration serverSelectionTimeout = Duration.ofSeconds(5);
+
+    // primary, primaryPreferred, secondary, secondaryPreferred or nearest
+    private String readPreference = "primary";
+
+    // used by MovieInfoReadRepository for the page / summary / name endpoints
+    private String readOnlyReadPreference = "secondaryPreferred";
+
+    // ignored for primary, the driver wants at least 90s
+    private Duration maxStaleness = Duration.ofSeconds(90);
+
+    // majority or a number of members
+    private String writeConcern = "majority";
+
+    private Duration writeConcernTimeout = Duration.ofSeconds(5);
+
+    // unset leaves it to the server (journaled for majority on a replica set)
+    private Boolean journal;
+
+    private boolean retryWrites = true;
+
+    private boolean retryReads = true;
+
+    @Data
+    public static class Pool {
+
+        private int maxSize = 100;
+
+        private int minSize = 10;
+
+        // how long a request waits for a free connection before failing with 503
+        private Duration maxWaitTime = Duration.ofSeconds(1);
+
+        private Duration maxConnectionIdleTime = Duration.ofMinutes(5);
+
+        // 0s keeps connections for as long as they are healthy
+        private Duration maxConnectionLifeTime = Duration.ofMinutes(30);
+    }
+
+    public ReadPreference toReadPreference() {
+        return readPreferenceOf(readPreference);
+    }
+
+    public ReadPreference toReadOnlyReadPreference() {
+        return readPreferenceOf(readOnlyReadPreference);
+    }
+
+    public WriteConcern toWriteConcern() {
+        var concern = "majority".equalsIgnoreCase(writeConcern)
+                ? WriteConcern.MAJORITY
+                : new WriteConcern(Integer.parseInt(writeConcern));
+        concern = concern.withWTimeout(writeConcernTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        return journal == null ? concern : concern.withJournal(journal);
+    }
+
+    private ReadPreference readPreferenceOf(String name) {
+        if ("primary".equalsIgnoreCase(name)) {
+            return ReadPreference.primary();
+        }
+        return ReadPreference.valueOf(name, List.of(), maxStaleness.toSeconds(), TimeUnit.SECONDS);
+    }
+}
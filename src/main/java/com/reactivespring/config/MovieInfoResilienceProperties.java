@@ -0,0 +1,64 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * movieinfo.resilience: deadlines, read retries and the circuit breaker that
+ * MovieInfoStoreResilience puts around every MovieInfoService repository call.
+ */
+@Data
+@ConfigurationProperties(prefix = "movieinfo.resilience")
+public class MovieInfoResilienceProperties {
+
+    private boolean enabled = true;
+
+    // whole call for single results, wait for the first / next document for lists
+    private Duration defaultTimeout = Duration.ofSeconds(2);
+
+    // by operation name (findById, save, ...), falls back to defaultTimeout
+    private Map<String, Duration> timeouts = new HashMap<>();
+
+    private Retry retry = new Retry();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    @Data
+    public static class Retry {
+
+        // retries after the first attempt, reads only
+        private int maxRetries = 2;
+
+        private Duration minBackoff = Duration.ofMillis(50);
+
+        private Duration maxBackoff = Duration.ofMillis(500);
+
+        // 0 to 1, fraction of each backoff that is randomized
+        private double jitter = 0.5;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+
+        // outcome of the last sliding-window-size calls
+        private int slidingWindowSize = 50;
+
+        private int minimumCalls = 20;
+
+        // percent of failed calls in the window that opens the circuit
+        private int failureRateThreshold = 50;
+
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        // trial calls let through after open-duration, all must succeed to close again
+        private int halfOpenCalls = 5;
+    }
+
+    public Duration timeoutOf(String operation) {
+        return timeouts.getOrDefault(operation, defaultTimeout);
+    }
+}
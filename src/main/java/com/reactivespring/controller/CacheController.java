@@ -0,0 +1,24 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.domain.CacheStatistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/v1/cache")
+public class CacheController {
+    private MovieInfoCache movieInfoCache;
+
+    public CacheController(MovieInfoCache movieInfoCache) {
+        this.movieInfoCache = movieInfoCache;
+    }
+
+    // hit / miss / eviction counters of the getMovieInfoById cache, used to size movieinfo.cache.maximum-size
+    @GetMapping("/movieinfos")
+    public Mono<CacheStatistics> movieInfoCacheStatistics(){
+        return Mono.fromSupplier(movieInfoCache::statistics);
+    }
+}
@@ -0,0 +1,50 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.aggregate.MovieInfoAggregates;
+import com.reactivespring.domain.MovieInfoYearAggregate;
+import com.reactivespring.domain.MovieInfoYearCount;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/v1")
+@Slf4j
+public class MovieInfoAggregatesController {
+    private MovieInfoAggregates movieInfoAggregates;
+
+    public MovieInfoAggregatesController(MovieInfoAggregates movieInfoAggregates) {
+        this.movieInfoAggregates = movieInfoAggregates;
+    }
+
+    // Movie count per year. Served from memory, 503 until the first load has finished.
+
+    @GetMapping("/movieinfos/aggregates")
+    public Mono<List<MovieInfoYearCount>> getYearCounts(){
+        return Mono.fromSupplier(movieInfoAggregates::counts);
+    }
+
+    // Count, most frequent cast members and release month histogram of one year.
+
+    @GetMapping("/movieinfos/aggregates/{year}")
+    public Mono<MovieInfoYearAggregate> getYearAggregate(@PathVariable int year){
+        return Mono.fromSupplier(() -> movieInfoAggregates.forYear(year));
+    }
+
+    // Reloads the aggregates from Mongo in the background, normally only needed after writes that
+    // bypassed the service. A failed reload is logged and the current aggregates stay in place.
+    @PostMapping("/movieinfos/aggregates/rebuild")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<Void> rebuildAggregates(){
+        return Mono.fromRunnable(() -> movieInfoAggregates.rebuild()
+                .subscribe(null, ex -> log.error("Rebuilding the movie info aggregates failed", ex)));
+    }
+}
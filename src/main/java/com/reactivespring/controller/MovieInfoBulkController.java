@@ -0,0 +1,31 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.BulkIngestResult;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.service.MovieInfoBulkIngestService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/v1")
+public class MovieInfoBulkController {
+    private MovieInfoBulkIngestService movieInfoBulkIngestService;
+
+    public MovieInfoBulkController(MovieInfoBulkIngestService movieInfoBulkIngestService) {
+        this.movieInfoBulkIngestService = movieInfoBulkIngestService;
+    }
+
+    // Body is either a JSON array or NDJSON, both are decoded element by element.
+    // One result line per element comes back as soon as its batch is written.
+
+    @PostMapping(value = "/movieinfos/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BulkIngestResult> bulkAddMovieInfos(@RequestBody Flux<MovieInfo> movieInfos){
+        return movieInfoBulkIngestService.ingest(movieInfos);
+    }
+}
@@ -1,18 +1,36 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.cache.MovieInfoWatermarks;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatch;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.domain.MovieInfoSummary;
+import com.reactivespring.domain.MovieInfoWatermark;
 import com.reactivespring.exceptions.MovieInfoNotFoundException;
+import com.reactivespring.logging.SignalTracer;
 import com.reactivespring.service.MovieInfoService;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.MovieInfoStreamEncoder;
+import com.reactivespring.stream.MovieInfoStreamFilter;
+import com.reactivespring.stream.MovieInfoStreamSessions;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.Valid;
+import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1")
@@ -20,17 +38,40 @@ import javax.validation.Valid;
 public class MovieInfoController {
     private MovieInfoService movieInfoService;
 
-    Sinks.Many<MovieInfo> movieInfoSink = Sinks.many().replay().all();
+    private MovieInfoChangeStream movieInfoChangeStream;
 
-    public MovieInfoController(MovieInfoService movieInfoService) {
+    private MovieInfoWatermarks movieInfoWatermarks;
+
+    private MovieInfoStreamEncoder movieInfoStreamEncoder;
+
+    private MovieInfoStreamSessions movieInfoStreamSessions;
+
+    private int streamPrefetch;
+
+    private CacheControl cacheControl;
+
+    public MovieInfoController(MovieInfoService movieInfoService, MovieInfoChangeStream movieInfoChangeStream,
+                               MovieInfoWatermarks movieInfoWatermarks, MovieInfoStreamEncoder movieInfoStreamEncoder,
+                               MovieInfoStreamSessions movieInfoStreamSessions,
+                               @Value("${movieinfo.pagination.stream-prefetch:256}") int streamPrefetch,
+                               @Value("${movieinfo.http.cache-max-age:0s}") Duration cacheMaxAge) {
         this.movieInfoService = movieInfoService;
+        this.movieInfoChangeStream = movieInfoChangeStream;
+        this.movieInfoWatermarks = movieInfoWatermarks;
+        this.movieInfoStreamEncoder = movieInfoStreamEncoder;
+        this.movieInfoStreamSessions = movieInfoStreamSessions;
+        this.streamPrefetch = streamPrefetch;
+        // no-cache still lets a proxy store the response, it just revalidates with If-None-Match every time
+        this.cacheControl = cacheMaxAge.isZero()
+                ? CacheControl.noCache().cachePublic()
+                : CacheControl.maxAge(cacheMaxAge).cachePublic();
     }
 
     @PostMapping("/movieinfos")
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo){
         return movieInfoService.addMovieInfo(movieInfo)
-                .doOnNext(saveInfo -> movieInfoSink.tryEmitNext(saveInfo));
+                .doOnNext(saveInfo -> movieInfoChangeStream.recordLocalChange(MovieInfoChangeType.INSERT, saveInfo));
     }
 
     //    @GetMapping("/movieinfos")
@@ -41,45 +82,176 @@ public class MovieInfoController {
     // This will work as streaming. Server sent event work as real time live data.
     // Like uber car location or cricket score.
 
+    // Only the last movieinfo.stream.buffer-size events are kept, send since (or Last-Event-ID) to resume.
+    // Event ids name the node and run that numbered them, an id from another one gets the catalogue from Mongo.
+    // Carries inserted and updated movies, deletes are only visible on /movieinfos/stream/events.
+    // year, cast and namePrefix narrow it down to the matching movies. Each event is encoded once
+    // by MovieInfoStreamEncoder and the same bytes go to every subscriber. MovieInfoStreamSessions
+    // limits the connections, sends heartbeats (empty lines) and cuts clients that stopped reading.
+
     @GetMapping(value = "/movieinfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<MovieInfo> streamMovieInfos(){
-        return movieInfoSink.asFlux();
+    public Flux<DataBuffer> streamMovieInfos(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                             @RequestParam(value = "since", required = false) String since,
+                                             @RequestParam(value = "year", required = false) Integer year,
+                                             @RequestParam(value = "cast", required = false) String cast,
+                                             @RequestParam(value = "namePrefix", required = false) String namePrefix,
+                                             ServerWebExchange exchange){
+        var events = movieInfoChangeStream.subscribe(movieInfoChangeStream.resumeSequence(since != null ? since : lastEventId),
+                        MovieInfoStreamFilter.of(year, cast, namePrefix))
+                .filter(event -> event.getType() != MovieInfoChangeType.DELETE && event.getType() != MovieInfoChangeType.RESYNC)
+                .map(event -> movieInfoStreamEncoder.ndjson(event, exchange.getResponse().bufferFactory()));
+        return movieInfoStreamSessions.open(exchange, MovieInfoStreamSessions.Heartbeat.NDJSON, events);
+    }
+
+    // Same stream as SSE so the sequence travels as the event id and EventSource reconnects resume by itself.
+    // Movies resent from Mongo carry no id, a resync event with the id to resume from follows the last one.
+    // With a filter, deletes still come for every movie: they only carry the id. An update that takes
+    // a movie out of the filter comes as a delete of that movie.
+
+    @GetMapping(value = "/movieinfos/stream/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<DataBuffer> streamMovieInfoEvents(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                                  @RequestParam(value = "since", required = false) String since,
+                                                  @RequestParam(value = "year", required = false) Integer year,
+                                                  @RequestParam(value = "cast", required = false) String cast,
+                                                  @RequestParam(value = "namePrefix", required = false) String namePrefix,
+                                                  ServerWebExchange exchange){
+        var events = movieInfoChangeStream.subscribe(movieInfoChangeStream.resumeSequence(since != null ? since : lastEventId),
+                        MovieInfoStreamFilter.of(year, cast, namePrefix))
+                .map(event -> movieInfoStreamEncoder.serverSentEvent(event, exchange.getResponse().bufferFactory()));
+        return movieInfoStreamSessions.open(exchange, MovieInfoStreamSessions.Heartbeat.SERVER_SENT_EVENT, events);
     }
 
     @GetMapping("/movieinfos")
-    public Flux<MovieInfo> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year){
-        log.info( "year is {} ", year);
-        if(year != null){
-            return movieInfoService.getAllMovieInfosByYear(year);
-        }
-            return movieInfoService.getAllMovieInfos().log();
+    public ResponseEntity<Flux<MovieInfo>> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year){
+        log.debug( "year is {} ", year);
+        // the watermark is taken before the query is even assembled, on a 304 the query never runs
+        var watermark = movieInfoWatermarks.forYear(year);
+        var movieInfos = year != null
+                ? movieInfoService.getAllMovieInfosByYear(year)
+                : SignalTracer.trace("getAllMovieInfos", movieInfoService.getAllMovieInfos());
+        return withWatermark(watermark).body(movieInfos);
+    }
+
+    // Accept: application/x-ndjson streams the same result one movie per line. Mongo is only asked
+    // for more documents as the client reads them, so memory stays flat for any collection size.
+
+    @GetMapping(value = "/movieinfos", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<MovieInfo>> streamAllMovieInfos(@RequestParam(value = "year", required = false) Integer year){
+        var watermark = movieInfoWatermarks.forYear(year);
+        var movieInfos = year != null
+                ? movieInfoService.getAllMovieInfosByYear(year)
+                : movieInfoService.getAllMovieInfos();
+        return withWatermark(watermark).body(movieInfos.limitRate(streamPrefetch));
+    }
+
+    // Keyset pagination, pass nextCursor of the previous page as cursor. size is capped server side.
+
+    @GetMapping("/movieinfos/page")
+    public Mono<MovieInfoPage> getMovieInfoPage(@RequestParam(value = "year", required = false) Integer year,
+                                                @RequestParam(value = "cursor", required = false) String cursor,
+                                                @RequestParam(value = "size", defaultValue = "100") int size){
+        return movieInfoService.getMovieInfoPage(year, cursor, size);
+    }
+
+    // id, name and year only, served from the year_name_id index without reading the documents
+
+    @GetMapping("/movieinfos/summaries")
+    public Flux<MovieInfoSummary> getMovieInfoSummaries(@RequestParam(value = "year", required = false) Integer year){
+        return movieInfoService.getMovieInfoSummaries(year);
+    }
+
+    // Many movies by id in one request: a JSON array of up to movieinfo.batch.max-ids ids, POST only
+    // because they don't fit in a URL. Found movies come back in request order, unknown ids as missing.
+
+    @PostMapping("/movieinfos/batch")
+    public Mono<MovieInfoBatch> getMovieInfosByIds(@RequestBody List<String> ids){
+        return movieInfoService.getMovieInfosByIds(ids);
     }
 
     @GetMapping("/movieinfos/movieName")
     public Mono<MovieInfo> getMovieInfosByName(@RequestParam(value = "name", required = false) String name){
-        log.info( "Name is {} ", name);
-        return movieInfoService.getMovieInfoByName(name).log();
+        log.debug( "Name is {} ", name);
+        return SignalTracer.trace("getMovieInfosByName", movieInfoService.getMovieInfoByName(name));
     }
 
+    // ETag / Last-Modified make this a conditional GET: a matching If-None-Match (or If-Modified-Since)
+    // gets a 304 without the body being encoded. Like the lists it varies by Accept and Accept-Encoding.
+
     @GetMapping("/movieinfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> getMovieById(@PathVariable String id){
-        return movieInfoService.getMovieInfoById(id)
-                .map(movieInfo -> ResponseEntity.ok().body(movieInfo))
-                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
-                .log();
+        return SignalTracer.trace("getMovieById", movieInfoService.getMovieInfoById(id)
+                .map(movieInfo -> validators(cacheable(), movieInfo).body(movieInfo))
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build())));
     }
 
+    // If-Match with the ETag of a previous read makes the update conditional, 412 if someone else wrote in between.
+
     @PutMapping("/movieinfos/{id}")
-    public Mono<ResponseEntity<MovieInfo>> updateMovieById(@RequestBody MovieInfo updatedMovieInfo, @PathVariable String id){
-        return movieInfoService.updateMovieInfoById(updatedMovieInfo, id)
-                .map(ResponseEntity.ok()::body)
+    public Mono<ResponseEntity<MovieInfo>> updateMovieById(@RequestBody @Valid MovieInfo updatedMovieInfo, @PathVariable String id,
+                                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        return movieInfoService.updateMovieInfoById(updatedMovieInfo, id, MovieInfoETags.expectedVersions(ifMatch))
+                .doOnNext(movieInfo -> movieInfoChangeStream.recordLocalChange(MovieInfoChangeType.UPDATE, movieInfo))
+                .map(MovieInfoController::okWithETag)
                 .switchIfEmpty(Mono.error(new MovieInfoNotFoundException("MovieInfo Not Found")));
                 //.switchIfEmpty(Mono.just(ResponseEntity.notFound().build())).log();
     }
 
+    // Only the fields present (non-null) in the body are changed, also accepts application/merge-patch+json.
+    // Those are validated like a POST body, the missing ones aren't required (MovieInfo.Patch).
+
+    @PatchMapping("/movieinfos/{id}")
+    public Mono<ResponseEntity<MovieInfo>> patchMovieById(@RequestBody @Validated(MovieInfo.Patch.class) MovieInfo changes, @PathVariable String id,
+                                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        return movieInfoService.patchMovieInfoById(changes, id, MovieInfoETags.expectedVersions(ifMatch))
+                .doOnNext(movieInfo -> movieInfoChangeStream.recordLocalChange(MovieInfoChangeType.UPDATE, movieInfo))
+                .map(MovieInfoController::okWithETag)
+                .switchIfEmpty(Mono.error(new MovieInfoNotFoundException("MovieInfo Not Found")));
+    }
+
     @DeleteMapping("/movieinfos/{id}")
     public Mono<Void> deleteMovieById(@PathVariable String id){
-        return movieInfoService.deleteMovieById(id);
+        return movieInfoService.deleteMovieById(id)
+                // deleting what isn't there is no change
+                .filter(deleted -> deleted > 0)
+                .doOnNext(deleted -> movieInfoChangeStream.recordLocalChange(MovieInfoChangeType.DELETE, deletedMovieInfo(id)))
+                .then();
+    }
+
+    private static ResponseEntity<MovieInfo> okWithETag(MovieInfo movieInfo) {
+        return validators(ResponseEntity.ok(), movieInfo).body(movieInfo);
+    }
+
+    private static ResponseEntity.BodyBuilder validators(ResponseEntity.BodyBuilder builder, MovieInfo movieInfo) {
+        var eTag = MovieInfoETags.of(movieInfo);
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        if (movieInfo.getLastModified() != null) {
+            builder.lastModified(movieInfo.getLastModified());
+        }
+        return builder;
+    }
+
+    // JSON, NDJSON or Smile, gzipped or not: a shared cache must key on both
+    private ResponseEntity.BodyBuilder cacheable() {
+        return ResponseEntity.ok()
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    private ResponseEntity.BodyBuilder withWatermark(MovieInfoWatermark watermark) {
+        if (watermark == null) {
+            return cacheable();
+        }
+        return cacheable()
+                .eTag(watermark.getETag())
+                .lastModified(watermark.getLastModified());
+    }
+
+    private static MovieInfo deletedMovieInfo(String id) {
+        var movieInfo = new MovieInfo();
+        movieInfo.setMovieInfoId(id);
+        return movieInfo;
     }
 
 }
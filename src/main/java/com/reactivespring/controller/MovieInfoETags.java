@@ -0,0 +1,54 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoVersionConflictException;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A movie info's ETag is its document version as a weak validator, e.g. W/"3": JSON, Smile and
+ * their gzip forms are different bytes for the same version, so the tag can't be a strong one.
+ * Also used by the blocking controller, so both stacks agree on the tags.
+ */
+public final class MovieInfoETags {
+
+    // one entity-tag of an If-Match list and the comma after it, RFC 7232 section 2.3
+    private static final Pattern LIST_ELEMENT = Pattern.compile("\\s*(?:W/)?\"([^\"]*)\"\\s*(?:,|$)");
+
+    private MovieInfoETags() {
+    }
+
+    public static String of(MovieInfo movieInfo) {
+        return movieInfo.getVersion() == null ? null : "W/\"" + movieInfo.getVersion() + "\"";
+    }
+
+    /**
+     * Versions an If-Match header accepts, null when there is no precondition (absent or *). A list
+     * ("1", "2") matches if any of its tags does. RFC 7232 wants the strong comparison here, which
+     * no tag of ours could ever pass since they are all weak: deliberately, W/"3" and "3" both ask
+     * for version 3. Tags that are no version of ours never match, so a header without any (or one
+     * that isn't a list of entity-tags) fails the precondition.
+     */
+    public static Set<Long> expectedVersions(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        var versions = new LinkedHashSet<Long>();
+        var matcher = LIST_ELEMENT.matcher(ifMatch);
+        var end = 0;
+        while (end < ifMatch.length() && matcher.find(end) && matcher.start() == end) {
+            try {
+                versions.add(Long.parseLong(matcher.group(1)));
+            } catch (NumberFormatException ex) {
+                // not one of ours, can't match
+            }
+            end = matcher.end();
+        }
+        if (end < ifMatch.length() || versions.isEmpty()) {
+            throw new MovieInfoVersionConflictException("If-Match " + ifMatch + " does not match any MovieInfo version");
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,29 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.MovieInfoSearchPage;
+import com.reactivespring.search.MovieInfoSearchIndex;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/v1")
+public class MovieInfoSearchController {
+    private MovieInfoSearchIndex movieInfoSearchIndex;
+
+    public MovieInfoSearchController(MovieInfoSearchIndex movieInfoSearchIndex) {
+        this.movieInfoSearchIndex = movieInfoSearchIndex;
+    }
+
+    // Prefix and token search over name and cast, e.g. ?q=dark kni matches "The Dark Knight".
+    // Answered from memory, it never goes to Mongo. 503 until the index has been loaded.
+
+    @GetMapping("/movieinfos/search")
+    public Mono<MovieInfoSearchPage> searchMovieInfos(@RequestParam("q") String query,
+                                                      @RequestParam(value = "page", defaultValue = "0") int page,
+                                                      @RequestParam(value = "size", defaultValue = "20") int size){
+        return Mono.fromSupplier(() -> movieInfoSearchIndex.search(query, page, size));
+    }
+}
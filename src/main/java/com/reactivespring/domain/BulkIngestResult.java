@@ -0,0 +1,26 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one element of a bulk ingest, index is its position in the request body.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkIngestResult {
+    private long index;
+    private String movieInfoId;
+    private boolean accepted;
+    private String error;
+
+    public static BulkIngestResult accepted(long index, String movieInfoId) {
+        return new BulkIngestResult(index, movieInfoId, true, null);
+    }
+
+    public static BulkIngestResult rejected(long index, String movieInfoId, String error) {
+        return new BulkIngestResult(index, movieInfoId, false, error);
+    }
+}
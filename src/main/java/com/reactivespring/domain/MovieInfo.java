@@ -4,11 +4,19 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Positive;
+import javax.validation.groups.Default;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -16,14 +24,38 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// Indexes are created at startup by MovieInfoIndexInitializer (auto index creation is off).
+// year_id serves findByYear and keyset pages per year, year_name_id the covered summary queries.
+@CompoundIndexes({
+        @CompoundIndex(name = "year_id", def = "{'year': 1, '_id': 1}"),
+        @CompoundIndex(name = "year_name_id", def = "{'year': 1, 'name': 1, '_id': 1}")
+})
 public class MovieInfo {
+
+    // validation group of PATCH bodies: a missing field is left alone, only the ones sent are checked
+    public interface Patch {
+    }
+
     @Id
     private String movieInfoId;
     @NotBlank(message = "MovieInfo.name must be present")
+    @Pattern(regexp = "(?s).*\\S.*", message = "MovieInfo.name must be present", groups = Patch.class)
+    @Indexed(name = "name")
     private String name;
     @NotNull
-    @Positive(message = "MovieInfo.year must be Positive value")
+    @Positive(message = "MovieInfo.year must be Positive value", groups = {Default.class, Patch.class})
     private Integer year;
-    private List<@NotBlank(message = "MovieInfo.cast must be present") String> cast;
+    @Indexed(name = "cast")
+    private List<@NotBlank(message = "MovieInfo.cast must be present", groups = {Default.class, Patch.class}) String> cast;
     private LocalDate release_date;
+    // bumped by every write, exposed to clients as the ETag
+    @Version
+    private Long version;
+    // served as Last-Modified
+    @LastModifiedDate
+    private Instant lastModified;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null, null);
+    }
 }
@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Answer to a batch lookup: the movie infos found, in the order their ids were asked for
+ * (a repeated id only once), and the ids that don't exist.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoBatch {
+    private List<MovieInfo> content;
+    private List<String> missing;
+}
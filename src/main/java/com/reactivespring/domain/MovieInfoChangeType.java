@@ -0,0 +1,9 @@
+package com.reactivespring.domain;
+
+public enum MovieInfoChangeType {
+    INSERT,
+    UPDATE,
+    DELETE,
+    // end of a catalogue resent from Mongo, carries no movie
+    RESYNC
+}
@@ -0,0 +1,27 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A MovieInfo change as seen by stream subscribers. The sequence is assigned by the
+ * change stream and is what clients send back as Last-Event-ID / since to resume.
+ * For DELETE only the movieInfoId of the movieInfo is set. An UPDATE carries the id, name, year
+ * and cast the movie had before as previous, when the change stream knew them.
+ * Movies resent from Mongo on a resync have sequence 0, nothing can be resumed from them. The
+ * RESYNC event that follows them has no movieInfo and the sequence to resume from.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoEvent {
+    private long sequence;
+    private MovieInfoChangeType type;
+    private MovieInfo movieInfo;
+    private MovieInfo previous;
+
+    public MovieInfoEvent(long sequence, MovieInfoChangeType type, MovieInfo movieInfo) {
+        this(sequence, type, movieInfo, null);
+    }
+}
@@ -0,0 +1,13 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoSearchHit {
+    private MovieInfo movieInfo;
+    private double score;
+}
@@ -0,0 +1,20 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of search hits, best match first. total counts every matching movie info.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoSearchPage {
+    private List<MovieInfoSearchHit> hits;
+    private int total;
+    private int page;
+    private int size;
+}
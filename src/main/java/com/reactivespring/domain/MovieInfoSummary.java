@@ -0,0 +1,20 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+
+/**
+ * The indexed fields of a MovieInfo only, so listing them is a covered query
+ * answered from the year_name_id index without touching the documents.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoSummary {
+    @Id
+    private String movieInfoId;
+    private String name;
+    private Integer year;
+}
@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoYearAggregate {
+    private Integer year;
+    private long count;
+    private List<CastAppearances> topCast;
+    // movies per release_date month, January first
+    private List<Long> releaseMonths;
+    private long withoutReleaseDate;
+}
@@ -0,0 +1,23 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Last Mongo change stream resume token processed by a node, stored as extended JSON.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "movieInfoStreamResumeTokens")
+public class StreamResumeToken {
+    @Id
+    private String nodeId;
+    private String token;
+    private Instant updatedAt;
+}
@@ -0,0 +1,7 @@
+package com.reactivespring.exceptions;
+
+public class AggregatesNotReadyException extends RuntimeException{
+    public AggregatesNotReadyException(String message) {
+        super(message);
+    }
+}
@@ -1,7 +1,11 @@
 package com.reactivespring.exceptions;
 
+import com.mongodb.MongoTimeoutException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -29,4 +33,71 @@ public class GlobalExceptionHandle {
 
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursor(InvalidCursorException ex){
+        log.error("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidBatchException.class)
+    public ResponseEntity<String> handleInvalidBatch(InvalidBatchException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(MovieInfoNotFoundException.class)
+    public ResponseEntity<String> handleMovieInfoNotFound(MovieInfoNotFoundException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(MovieInfoVersionConflictException.class)
+    public ResponseEntity<String> handleVersionConflict(MovieInfoVersionConflictException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(ex.getMessage());
+    }
+
+    // POST with the id of an existing movie info
+    @ExceptionHandler(DuplicateKeyException.class)
+    public ResponseEntity<String> handleDuplicateKey(DuplicateKeyException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("MovieInfo already exists");
+    }
+
+    @ExceptionHandler(AggregatesNotReadyException.class)
+    public ResponseEntity<String> handleAggregatesNotReady(AggregatesNotReadyException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(SearchIndexNotReadyException.class)
+    public ResponseEntity<String> handleSearchIndexNotReady(SearchIndexNotReadyException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(ex.getMessage());
+    }
+
+    // over movieinfo.stream.sessions.max-connections or max-connections-per-client
+    @ExceptionHandler(StreamLimitExceededException.class)
+    public ResponseEntity<String> handleStreamLimitExceeded(StreamLimitExceededException ex){
+        log.debug("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
+
+    // no free pooled connection within movieinfo.mongo.pool.max-wait-time, no reachable server,
+    // a repository call past its deadline or refused by the open circuit breaker
+    @ExceptionHandler({DataAccessResourceFailureException.class, MongoTimeoutException.class,
+            MovieInfoStoreUnavailableException.class})
+    public ResponseEntity<String> handleMongoUnavailable(RuntimeException ex){
+        log.warn("Exception caught {}" , ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("MovieInfo store is busy, retry later");
+    }
+
 }
@@ -0,0 +1,7 @@
+package com.reactivespring.exceptions;
+
+public class InvalidBatchException extends RuntimeException{
+    public InvalidBatchException(String message) {
+        super(message);
+    }
+}
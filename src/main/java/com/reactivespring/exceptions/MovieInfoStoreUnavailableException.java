@@ -0,0 +1,11 @@
+package com.reactivespring.exceptions;
+
+public class MovieInfoStoreUnavailableException extends RuntimeException{
+    public MovieInfoStoreUnavailableException(String message) {
+        super(message);
+    }
+
+    public MovieInfoStoreUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package com.reactivespring.exceptions;
+
+public class MovieInfoVersionConflictException extends RuntimeException{
+    public MovieInfoVersionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.reactivespring.exceptions;
+
+public class SearchIndexNotReadyException extends RuntimeException{
+    public SearchIndexNotReadyException(String message) {
+        super(message);
+    }
+}
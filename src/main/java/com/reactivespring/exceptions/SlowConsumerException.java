@@ -0,0 +1,7 @@
+package com.reactivespring.exceptions;
+
+public class SlowConsumerException extends RuntimeException{
+    public SlowConsumerException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.reactivespring.exceptions;
+
+public class StreamResetException extends RuntimeException{
+    public StreamResetException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,122 @@
+package com.reactivespring.faststart;
+
+import com.reactivespring.admission.AdmissionControlWebFilter;
+import com.reactivespring.aggregate.MovieInfoAggregates;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.cache.MovieInfoWatermarks;
+import com.reactivespring.config.MongoAuditingConfig;
+import com.reactivespring.config.MongoClientConfig;
+import com.reactivespring.config.MovieInfoCodecConfig;
+import com.reactivespring.config.MovieInfoIndexInitializer;
+import com.reactivespring.controller.CacheController;
+import com.reactivespring.controller.FluxAndMonoController;
+import com.reactivespring.controller.MovieInfoAggregatesController;
+import com.reactivespring.controller.MovieInfoBulkController;
+import com.reactivespring.controller.MovieInfoController;
+import com.reactivespring.controller.MovieInfoSearchController;
+import com.reactivespring.exceptions.GlobalExceptionHandle;
+import com.reactivespring.logging.AccessLogWebFilter;
+import com.reactivespring.metrics.ReactiveTimers;
+import com.reactivespring.replica.MovieInfoReplica;
+import com.reactivespring.repository.MovieInfoReadRepository;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.repository.MovieInfoRepositoryImpl;
+import com.reactivespring.repository.StreamResumeTokenRepository;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import com.reactivespring.search.MovieInfoSearchIndex;
+import com.reactivespring.service.MovieInfoBatchLoader;
+import com.reactivespring.service.MovieInfoBulkIngestService;
+import com.reactivespring.service.MovieInfoService;
+import com.reactivespring.service.MovieInfoWriteBatcher;
+import com.reactivespring.stream.MongoChangeStreamTailer;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.MovieInfoStreamEncoder;
+import com.reactivespring.stream.MovieInfoStreamSessions;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+
+import java.beans.Introspector;
+import java.util.List;
+
+/**
+ * Registers the application's beans by hand for {@link MoviesInfoFastStartApplication}, in place
+ * of the classpath scan and the repository scan. Bean names are the ones the scan would pick.
+ *
+ * Every component of the scanned application has to be listed here, MovieInfoBeansTest fails
+ * when one is missing.
+ */
+public class MovieInfoBeans implements ApplicationContextInitializer<GenericApplicationContext> {
+
+    public static final List<Class<?>> COMPONENTS = List.of(
+            MongoAuditingConfig.class,
+            MongoClientConfig.class,
+            MovieInfoCodecConfig.class,
+            MovieInfoIndexInitializer.class,
+            ReactiveTimers.class,
+            MovieInfoStoreResilience.class,
+            MovieInfoReadRepository.class,
+            MovieInfoCache.class,
+            MovieInfoWatermarks.class,
+            MovieInfoChangeStream.class,
+            MovieInfoStreamEncoder.class,
+            MovieInfoStreamSessions.class,
+            MovieInfoBatchLoader.class,
+            MovieInfoWriteBatcher.class,
+            MovieInfoService.class,
+            MovieInfoBulkIngestService.class,
+            MovieInfoSearchIndex.class,
+            MovieInfoAggregates.class,
+            MovieInfoReplica.class,
+            AdmissionControlWebFilter.class,
+            AccessLogWebFilter.class,
+            GlobalExceptionHandle.class,
+            MovieInfoController.class,
+            MovieInfoBulkController.class,
+            MovieInfoSearchController.class,
+            MovieInfoAggregatesController.class,
+            CacheController.class,
+            FluxAndMonoController.class);
+
+    // created at startup even with lazy initialization: the web filters, the index initializer
+    // and everything a GET /v1/movieinfos/{id} needs
+    public static final List<Class<?>> EAGER = List.of(
+            MovieInfoIndexInitializer.class,
+            AdmissionControlWebFilter.class,
+            AccessLogWebFilter.class,
+            GlobalExceptionHandle.class,
+            MovieInfoController.class,
+            MovieInfoService.class,
+            MovieInfoBatchLoader.class,
+            MovieInfoCache.class,
+            MovieInfoStoreResilience.class,
+            MovieInfoReadRepository.class,
+            MovieInfoRepository.class);
+
+    @Override
+    public void initialize(GenericApplicationContext context) {
+        COMPONENTS.forEach(type -> context.registerBean(beanName(type), type));
+        if ("MONGO".equalsIgnoreCase(context.getEnvironment().getProperty("movieinfo.stream.source"))) {
+            context.registerBean(beanName(MongoChangeStreamTailer.class), MongoChangeStreamTailer.class);
+        }
+
+        context.registerBean("movieInfoRepository", MovieInfoRepository.class, () -> {
+            var template = context.getBean(ReactiveMongoTemplate.class);
+            return new ReactiveMongoRepositoryFactory(template)
+                    .getRepository(MovieInfoRepository.class, RepositoryFragments.just(new MovieInfoRepositoryImpl(template)));
+        });
+        context.registerBean("streamResumeTokenRepository", StreamResumeTokenRepository.class, () ->
+                new ReactiveMongoRepositoryFactory(context.getBean(ReactiveMongoTemplate.class))
+                        .getRepository(StreamResumeTokenRepository.class));
+
+        context.registerBean("movieInfoEagerBeans", LazyInitializationExcludeFilter.class, () ->
+                LazyInitializationExcludeFilter.forBeanTypes(EAGER.toArray(new Class<?>[0])));
+    }
+
+    private static String beanName(Class<?> type) {
+        return Introspector.decapitalize(type.getSimpleName());
+    }
+}
@@ -0,0 +1,32 @@
+package com.reactivespring.faststart;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
+
+/**
+ * The same service as MoviesInfoServiceApplication, started for a short time to first request:
+ * no classpath scan or repository scan (beans come from {@link MovieInfoBeans}), the entity scan
+ * limited to the domain package, and the faststart profile, which turns on lazy initialization
+ * for everything outside {@link MovieInfoBeans#EAGER} and skips the startup query plan check.
+ *
+ * Deliberately not a @SpringBootConfiguration, so the scan of the regular application never
+ * picks it up. See the fastStart* Gradle tasks for the AppCDS archive and the measurements.
+ */
+@EnableAutoConfiguration(exclude = MongoReactiveRepositoriesAutoConfiguration.class)
+@AutoConfigurationPackage(basePackageClasses = MovieInfo.class)
+public class MoviesInfoFastStartApplication {
+
+    public static void main(String[] args) {
+        var application = new SpringApplication(MoviesInfoFastStartApplication.class);
+        application.addInitializers(new MovieInfoBeans());
+        application.setAdditionalProfiles("faststart");
+        var context = application.run(args);
+        // the AppCDS training run only needs the classes loaded during startup
+        if (context.getEnvironment().getProperty("movieinfo.faststart.exit-after-startup", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
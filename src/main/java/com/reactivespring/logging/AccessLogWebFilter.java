@@ -0,0 +1,68 @@
+package com.reactivespring.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Correlation id and sampled access log.
+ *
+ * Every response carries X-Request-Id (the caller's, or a generated one). One line per request
+ * goes to the {@code movieinfo.access} logger for a {@code sample-rate} fraction of requests,
+ * plus every failed or 5xx request and every traced one. A request with {@code X-Trace-Signals: true}
+ * also turns on {@link SignalTracer} for that request only, when trace-header-enabled allows it.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AccessLogWebFilter implements WebFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+    public static final String TRACE_HEADER = "X-Trace-Signals";
+
+    private static final Logger accessLog = LoggerFactory.getLogger("movieinfo.access");
+
+    private final double sampleRate;
+    private final boolean traceHeaderEnabled;
+
+    public AccessLogWebFilter(@Value("${movieinfo.logging.access-log-sample-rate:0.01}") double sampleRate,
+                              @Value("${movieinfo.logging.trace-header-enabled:true}") boolean traceHeaderEnabled) {
+        this.sampleRate = sampleRate;
+        this.traceHeaderEnabled = traceHeaderEnabled;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        var requestId = request.getHeaders().getFirst(REQUEST_ID_HEADER);
+        if (requestId == null || requestId.isEmpty()) {
+            requestId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        }
+        exchange.getResponse().getHeaders().set(REQUEST_ID_HEADER, requestId);
+
+        var trace = traceHeaderEnabled && "true".equalsIgnoreCase(request.getHeaders().getFirst(TRACE_HEADER));
+        var sampled = trace || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        var id = requestId;
+        var started = System.nanoTime();
+
+        return chain.filter(exchange)
+                .doFinally(signalType -> {
+                    var status = exchange.getResponse().getRawStatusCode();
+                    var failed = signalType == SignalType.ON_ERROR || (status != null && status >= 500);
+                    if ((sampled || failed) && accessLog.isInfoEnabled()) {
+                        accessLog.info("{} {} {} {} {}us {}", id, request.getMethodValue(), request.getPath().value(),
+                                status, (System.nanoTime() - started) / 1000, signalType);
+                    }
+                })
+                .contextWrite(context -> SignalTracer.context(context, id, trace));
+    }
+}
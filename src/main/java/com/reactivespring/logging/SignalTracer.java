@@ -0,0 +1,67 @@
+package com.reactivespring.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Per-request replacement for {@code .log()}.
+ *
+ * The wrapped publisher is only instrumented when the subscriber context says so, which
+ * {@link AccessLogWebFilter} does for requests carrying the trace header. Every other request
+ * pays one context lookup per subscription and nothing per element.
+ */
+public final class SignalTracer {
+
+    private static final Logger log = LoggerFactory.getLogger("movieinfo.trace");
+
+    private static final String TRACE_KEY = SignalTracer.class.getName() + ".trace";
+    private static final String REQUEST_ID_KEY = SignalTracer.class.getName() + ".requestId";
+
+    private SignalTracer() {
+    }
+
+    public static Context context(Context context, String requestId, boolean trace) {
+        var withId = context.put(REQUEST_ID_KEY, requestId);
+        return trace ? withId.put(TRACE_KEY, Boolean.TRUE) : withId;
+    }
+
+    public static <T> Mono<T> trace(String name, Mono<T> mono) {
+        return Mono.deferContextual(context -> {
+            if (!isTracing(context)) {
+                return mono;
+            }
+            var requestId = requestId(context);
+            return mono
+                    .doOnSubscribe(subscription -> log.info("[{}] {} onSubscribe", requestId, name))
+                    .doOnRequest(n -> log.info("[{}] {} request({})", requestId, name, n))
+                    .doOnEach(signal -> log.info("[{}] {} {}", requestId, name, signal))
+                    .doOnCancel(() -> log.info("[{}] {} cancel", requestId, name));
+        });
+    }
+
+    public static <T> Flux<T> trace(String name, Flux<T> flux) {
+        return Flux.deferContextual(context -> {
+            if (!isTracing(context)) {
+                return flux;
+            }
+            var requestId = requestId(context);
+            return flux
+                    .doOnSubscribe(subscription -> log.info("[{}] {} onSubscribe", requestId, name))
+                    .doOnRequest(n -> log.info("[{}] {} request({})", requestId, name, n))
+                    .doOnEach(signal -> log.info("[{}] {} {}", requestId, name, signal))
+                    .doOnCancel(() -> log.info("[{}] {} cancel", requestId, name));
+        });
+    }
+
+    private static boolean isTracing(ContextView context) {
+        return context.hasKey(TRACE_KEY) && log.isInfoEnabled();
+    }
+
+    private static String requestId(ContextView context) {
+        return context.getOrDefault(REQUEST_ID_KEY, "-");
+    }
+}
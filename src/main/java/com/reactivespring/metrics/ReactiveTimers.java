@@ -0,0 +1,96 @@
+package com.reactivespring.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times a Mono / Flux from subscription until it terminates or is cancelled.
+ *
+ * Tags are the method name and the outcome (success, error, cancelled) only; never put ids
+ * or other request values in here, every distinct tag value is a new time series. Each timer is
+ * registered once and reused, so timing a call costs no meter lookup in the registry.
+ */
+@Component
+public class ReactiveTimers {
+
+    public static final String SERVICE = "movieinfo.service";
+    public static final String REPOSITORY = "movieinfo.repository";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, Timer> timers = new ConcurrentHashMap<>();
+
+    public ReactiveTimers(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Mono<T> time(String name, String method, Mono<T> mono) {
+        return Mono.defer(() -> {
+            var sample = Timer.start(meterRegistry);
+            return mono.doFinally(signalType -> sample.stop(timer(name, method, signalType)));
+        });
+    }
+
+    public <T> Flux<T> time(String name, String method, Flux<T> flux) {
+        return Flux.defer(() -> {
+            var sample = Timer.start(meterRegistry);
+            return flux.doFinally(signalType -> sample.stop(timer(name, method, signalType)));
+        });
+    }
+
+    private Timer timer(String name, String method, SignalType signalType) {
+        var key = new Key(name, method, outcome(signalType));
+        var timer = timers.get(key);
+        return timer != null ? timer : timers.computeIfAbsent(key, this::register);
+    }
+
+    private Timer register(Key key) {
+        return Timer.builder(key.name)
+                .tag("method", key.method)
+                .tag("outcome", key.outcome)
+                .register(meterRegistry);
+    }
+
+    private static String outcome(SignalType signalType) {
+        switch (signalType) {
+            case ON_ERROR:
+                return "error";
+            case CANCEL:
+                return "cancelled";
+            default:
+                return "success";
+        }
+    }
+
+    private static final class Key {
+        private final String name;
+        private final String method;
+        private final String outcome;
+
+        Key(String name, String method, String outcome) {
+            this.name = name;
+            this.method = method;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            var key = (Key) other;
+            return name.equals(key.name) && method.equals(key.method) && outcome.equals(key.outcome);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * name.hashCode() + method.hashCode()) + outcome.hashCode();
+        }
+    }
+}
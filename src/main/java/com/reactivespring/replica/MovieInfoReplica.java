@@ -0,0 +1,312 @@
+package com.reactivespring.replica;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.StreamSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process copy of the whole movieInfo collection, answering the list, year, name and id reads
+ * of MovieInfoService without Mongo. Off unless movieinfo.replica.enabled.
+ *
+ * Loaded with one streaming findAll once the application is ready and kept current from
+ * {@link MovieInfoChangeStream}, which has to be fed by Mongo (movieinfo.stream.source=MONGO) so
+ * other nodes' writes arrive too, startup fails otherwise. A reload also runs whenever the event
+ * sequence has a gap. Events arriving while it loads are replayed on the new snapshot before it is
+ * swapped in, reads keep using the old one meanwhile (so a reload briefly holds two copies).
+ *
+ * Movies are kept in id order with secondary indexes by year (in id order too, like the year_id
+ * index) and by name. Names, cast members, years and release dates are stored once and shared by
+ * every movie that has them, and reads hand out the stored instances without copying, so they
+ * must not be modified. Until the first load completes {@link #isReady()} is false and reads go to
+ * Mongo; after that a movie the replica lacks (a write it has not seen yet) is still looked up
+ * there. The same flag is the movieInfoReplica health indicator, OUT_OF_SERVICE until then.
+ */
+@Component
+@Slf4j
+public class MovieInfoReplica implements MeterBinder, HealthIndicator {
+
+    private final MovieInfoRepository movieInfoRepository;
+    private final MovieInfoChangeStream movieInfoChangeStream;
+    private final boolean enabled;
+    private final Duration rebuildInterval;
+
+    // replaced by a reload, changed under the lock of this
+    private volatile Snapshot snapshot = new Snapshot();
+    // non-null while a reload is loading, guarded by this
+    private List<MovieInfoEvent> pending;
+
+    private final AtomicLong lastSequence = new AtomicLong();
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private final AtomicLong reloads = new AtomicLong();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+    private volatile boolean ready;
+
+    public MovieInfoReplica(MovieInfoRepository movieInfoRepository,
+                            MovieInfoChangeStream movieInfoChangeStream,
+                            @Value("${movieinfo.replica.enabled:false}") boolean enabled,
+                            @Value("${movieinfo.replica.rebuild-interval:1h}") Duration rebuildInterval,
+                            @Value("${movieinfo.stream.source:LOCAL}") StreamSource streamSource) {
+        // with LOCAL the replica would miss every other node's writes until the next reload
+        if (enabled && streamSource != StreamSource.MONGO) {
+            throw new IllegalStateException("movieinfo.replica.enabled needs movieinfo.stream.source=MONGO, it is " + streamSource);
+        }
+        this.movieInfoRepository = movieInfoRepository;
+        this.movieInfoChangeStream = movieInfoChangeStream;
+        this.enabled = enabled;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // follow the change stream before the first load so nothing written during it is missed
+        lastSequence.set(movieInfoChangeStream.getHeadSequence());
+        subscriptions.add(Flux.defer(() -> movieInfoChangeStream.subscribe(lastSequence.get()))
+                .doOnNext(this::onEvent)
+                .retry()
+                .subscribe());
+        subscriptions.add(Flux.interval(Duration.ZERO, rebuildInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> reload()
+                        .onErrorResume(ex -> {
+                            log.error("Loading the movie info replica failed", ex);
+                            return Mono.empty();
+                        }))
+                .subscribe());
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return snapshot.byId.size();
+    }
+
+    public Flux<MovieInfo> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(snapshot.byId.values()));
+    }
+
+    public Flux<MovieInfo> findByYear(Integer year) {
+        return Flux.defer(() -> {
+            var movieInfos = year == null ? null : snapshot.byYear.get(year);
+            return movieInfos == null ? Flux.empty() : Flux.fromIterable(movieInfos.values());
+        });
+    }
+
+    // the one with the lowest id when several movies share the name
+    public Mono<MovieInfo> findByName(String name) {
+        return Mono.fromSupplier(() -> {
+            var movieInfos = name == null ? null : snapshot.byName.get(name);
+            return movieInfos == null ? null : movieInfos[0];
+        });
+    }
+
+    public Mono<MovieInfo> findById(String id) {
+        return Mono.fromSupplier(() -> id == null ? null : snapshot.byId.get(id));
+    }
+
+    public synchronized void apply(MovieInfoEvent event) {
+        snapshot.apply(event);
+        if (pending != null) {
+            pending.add(event);
+        }
+    }
+
+    /**
+     * Loads everything from Mongo and swaps the result in. A no-op while another reload runs.
+     */
+    public Mono<Void> reload() {
+        return Mono.defer(() -> {
+            if (!reloading.compareAndSet(false, true)) {
+                return Mono.<Void>empty();
+            }
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            var fresh = new Snapshot();
+            var started = System.nanoTime();
+            return movieInfoRepository.findAll()
+                    .doOnNext(fresh::upsert)
+                    .then(Mono.<Void>fromRunnable(() -> {
+                        synchronized (this) {
+                            pending.forEach(fresh::apply);
+                            pending = null;
+                            snapshot = fresh;
+                        }
+                        ready = true;
+                        reloads.incrementAndGet();
+                        log.info("Movie info replica loaded, {} movies in {} years in {} ms", fresh.byId.size(),
+                                fresh.byYear.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                    }))
+                    .doFinally(signalType -> {
+                        synchronized (this) {
+                            pending = null;
+                        }
+                        reloading.set(false);
+                    });
+        });
+    }
+
+    @Override
+    public Health health() {
+        if (!enabled) {
+            return Health.up().withDetail("enabled", false).build();
+        }
+        return (ready ? Health.up() : Health.outOfService())
+                .withDetail("movies", size())
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("movieinfo.replica.documents", this, MovieInfoReplica::size)
+                .description("Movies held by the in-memory replica")
+                .register(registry);
+        Gauge.builder("movieinfo.replica.ready", this, replica -> replica.isReady() ? 1 : 0)
+                .description("1 once the in-memory replica is loaded and serving reads")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.replica.reloads", reloads, AtomicLong::get)
+                .description("Full loads of the in-memory replica")
+                .register(registry);
+    }
+
+    private void onEvent(MovieInfoEvent event) {
+        var gap = event.getSequence() > lastSequence.getAndSet(event.getSequence()) + 1;
+        apply(event);
+        if (gap) {
+            log.info("Movie info replica missed events before sequence {}, reloading", event.getSequence());
+            reload().subscribe(null, ex -> log.error("Loading the movie info replica failed", ex));
+        }
+    }
+
+    // one writer at a time (the loading reload, or the replica lock once published), any number of readers
+    private static final class Snapshot {
+        private final ConcurrentSkipListMap<String, MovieInfo> byId = new ConcurrentSkipListMap<>();
+        private final Map<Integer, ConcurrentSkipListMap<String, MovieInfo>> byYear = new ConcurrentHashMap<>();
+        // nearly always a single movie, sorted by id
+        private final Map<String, MovieInfo[]> byName = new ConcurrentHashMap<>();
+        // names, cast members, years and dates already stored, only grows until the next reload
+        private final Map<Object, Object> shared = new HashMap<>();
+
+        void apply(MovieInfoEvent event) {
+            // carries no movie, the jump in sequence to it (from the resent movies' 0) starts a reload
+            if (event.getType() == MovieInfoChangeType.RESYNC) {
+                return;
+            }
+            if (event.getType() == MovieInfoChangeType.DELETE) {
+                remove(event.getMovieInfo().getMovieInfoId());
+            } else {
+                upsert(event.getMovieInfo());
+            }
+        }
+
+        void upsert(MovieInfo movieInfo) {
+            var id = movieInfo.getMovieInfoId();
+            if (id == null) {
+                return;
+            }
+            var stored = compact(movieInfo);
+            var previous = byId.put(id, stored);
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(stored);
+        }
+
+        void remove(String id) {
+            var previous = id == null ? null : byId.remove(id);
+            if (previous != null) {
+                unindex(previous);
+            }
+        }
+
+        private void index(MovieInfo movieInfo) {
+            var id = movieInfo.getMovieInfoId();
+            if (movieInfo.getYear() != null) {
+                byYear.computeIfAbsent(movieInfo.getYear(), year -> new ConcurrentSkipListMap<>()).put(id, movieInfo);
+            }
+            if (movieInfo.getName() != null) {
+                byName.merge(movieInfo.getName(), new MovieInfo[]{movieInfo}, (current, added) -> {
+                    var merged = Arrays.copyOf(current, current.length + 1);
+                    merged[current.length] = movieInfo;
+                    Arrays.sort(merged, (left, right) -> left.getMovieInfoId().compareTo(right.getMovieInfoId()));
+                    return merged;
+                });
+            }
+        }
+
+        private void unindex(MovieInfo movieInfo) {
+            var id = movieInfo.getMovieInfoId();
+            if (movieInfo.getYear() != null) {
+                byYear.computeIfPresent(movieInfo.getYear(), (year, movieInfos) -> {
+                    movieInfos.remove(id);
+                    return movieInfos.isEmpty() ? null : movieInfos;
+                });
+            }
+            if (movieInfo.getName() != null) {
+                byName.computeIfPresent(movieInfo.getName(), (name, movieInfos) -> {
+                    var remaining = Arrays.stream(movieInfos)
+                            .filter(other -> !id.equals(other.getMovieInfoId()))
+                            .toArray(MovieInfo[]::new);
+                    return remaining.length == 0 ? null : remaining;
+                });
+            }
+        }
+
+        // a private copy, with the values other movies already have shared
+        private MovieInfo compact(MovieInfo movieInfo) {
+            List<String> cast = null;
+            if (movieInfo.getCast() != null) {
+                var members = movieInfo.getCast().stream().map(this::share).toArray(String[]::new);
+                cast = Collections.unmodifiableList(Arrays.asList(members));
+            }
+            return new MovieInfo(movieInfo.getMovieInfoId(), share(movieInfo.getName()), share(movieInfo.getYear()),
+                    cast, share(movieInfo.getRelease_date()), movieInfo.getVersion(), movieInfo.getLastModified());
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T share(T value) {
+            return value == null ? null : (T) shared.computeIfAbsent(value, key -> key);
+        }
+    }
+}
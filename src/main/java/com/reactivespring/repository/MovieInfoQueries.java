@@ -0,0 +1,70 @@
+package com.reactivespring.repository;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * The list and lookup queries of the repositories, in one place so that MovieInfoIndexInitializer
+ * explains exactly what they send.
+ */
+public final class MovieInfoQueries {
+
+    // BSON type number of ObjectId
+    private static final int OBJECT_ID_TYPE = 7;
+
+    private static final String SUMMARY_INDEX = "year_name_id";
+
+    private MovieInfoQueries() {
+    }
+
+    public static Query byYear(Integer year) {
+        return Query.query(Criteria.where("year").is(year));
+    }
+
+    public static Query byName(String name) {
+        return Query.query(Criteria.where("name").is(name));
+    }
+
+    /**
+     * Keyset page in _id order, optionally restricted to one year.
+     * afterId is the last id of the previous page, null for the first page.
+     */
+    public static Query page(Integer year, String afterId, int limit) {
+        var criteria = new Criteria();
+        if (year != null) {
+            criteria = Criteria.where("year").is(year);
+        }
+        if (afterId != null) {
+            criteria = criteria.andOperator(after(afterId));
+        }
+        return new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .limit(limit);
+    }
+
+    /**
+     * Id, name and year of every movie info (or the ones of one year), covered by the
+     * year_name_id index.
+     */
+    public static Query summaries(Integer year) {
+        var query = year != null ? byYear(year) : new Query();
+        query.fields().include("year").include("name");
+        // without the hint the planner may pick year_id and fetch every document
+        query.withHint(SUMMARY_INDEX);
+        return query;
+    }
+
+    // Ids are ObjectIds when generated and plain strings when the client chose them. Mongo sorts
+    // all strings before all ObjectIds but $gt never crosses types, so after a string id the
+    // ObjectIds still have to be included explicitly.
+    private static Criteria after(String afterId) {
+        if (ObjectId.isValid(afterId)) {
+            return Criteria.where("_id").gt(new ObjectId(afterId));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("_id").gt(afterId),
+                Criteria.where("_id").type(OBJECT_ID_TYPE));
+    }
+}
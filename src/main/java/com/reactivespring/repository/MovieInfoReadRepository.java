@@ -0,0 +1,56 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.config.MovieInfoMongoProperties;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoSummary;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Queries of the read-only list endpoints, run with movieinfo.mongo.read-only-read-preference
+ * (secondaryPreferred by default) so they can be served by a secondary, up to max-staleness behind.
+ *
+ * Reads by id stay on {@link MovieInfoRepository} and the primary: their result goes into
+ * MovieInfoCache, and a stale secondary read would be served from there for the whole ttl. So do
+ * the full and per-year lists: they are sent with the ETag of MovieInfoWatermarks, which follows
+ * the primary, and a lagging secondary would pair an old body with the new ETag.
+ */
+@Repository
+public class MovieInfoReadRepository {
+
+    private final ReactiveMongoTemplate readOnlyMongoTemplate;
+
+    public MovieInfoReadRepository(ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory,
+                                   MongoConverter mongoConverter,
+                                   MovieInfoMongoProperties mongoProperties) {
+        this.readOnlyMongoTemplate = new ReactiveMongoTemplate(reactiveMongoDatabaseFactory, mongoConverter);
+        this.readOnlyMongoTemplate.setReadPreference(mongoProperties.toReadOnlyReadPreference());
+    }
+
+    public Mono<MovieInfo> findByName(String name) {
+        return readOnlyMongoTemplate.findOne(MovieInfoQueries.byName(name), MovieInfo.class);
+    }
+
+    /**
+     * Keyset page in _id order, optionally restricted to one year.
+     * afterId is the last id of the previous page, null for the first page.
+     */
+    public Flux<MovieInfo> findPage(Integer year, String afterId, int limit) {
+        return readOnlyMongoTemplate.find(MovieInfoQueries.page(year, afterId, limit), MovieInfo.class);
+    }
+
+    /**
+     * Id, name and year of every movie info (or the ones of one year), in year, name order.
+     * Covered by the year_name_id index.
+     */
+    public Flux<MovieInfoSummary> findSummaries(Integer year) {
+        return readOnlyMongoTemplate.query(MovieInfo.class)
+                .as(MovieInfoSummary.class)
+                .matching(MovieInfoQueries.summaries(year))
+                .all();
+    }
+}
@@ -2,10 +2,10 @@ package com.reactivespring.repository;
 
 import com.reactivespring.domain.MovieInfo;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String> {
-    Flux<MovieInfo> findByYear(Integer year);
+public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String>, MovieInfoRepositoryCustom {
     Mono<MovieInfo> findByName(String name);
+    // like deleteById, but tells whether there was anything to delete
+    Mono<Long> deleteByMovieInfoId(String movieInfoId);
 }
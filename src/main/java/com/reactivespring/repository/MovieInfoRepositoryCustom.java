@@ -0,0 +1,21 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface MovieInfoRepositoryCustom {
+
+    // MovieInfoQueries.byYear, the query the plan check explains
+    Flux<MovieInfo> findByYear(Integer year);
+
+    /**
+     * Single findAndModify: $set of the given fields, $inc of the version and $currentDate of
+     * lastModified, returning the updated document. With expectedVersions only those versions
+     * are updated. Empty when no document matched.
+     */
+    Mono<MovieInfo> updateFields(String id, Collection<Long> expectedVersions, Map<String, Object> fields);
+}
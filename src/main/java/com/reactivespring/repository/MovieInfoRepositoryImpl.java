@@ -0,0 +1,41 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+public class MovieInfoRepositoryImpl implements MovieInfoRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfo> findByYear(Integer year) {
+        return reactiveMongoTemplate.find(MovieInfoQueries.byYear(year), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<MovieInfo> updateFields(String id, Collection<Long> expectedVersions, Map<String, Object> fields) {
+        var criteria = Criteria.where("_id").is(id);
+        if (expectedVersions != null) {
+            criteria = criteria.and("version").in(expectedVersions);
+        }
+        var update = new Update();
+        fields.forEach(update::set);
+        update.inc("version", 1);
+        update.currentDate("lastModified");
+        return reactiveMongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+    }
+}
@@ -0,0 +1,169 @@
+package com.reactivespring.resilience;
+
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.reactivespring.config.MovieInfoResilienceProperties;
+import com.reactivespring.exceptions.MovieInfoStoreUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Deadline, retry and circuit breaker for MovieInfoService's repository calls.
+ *
+ * Every attempt gets the operation's deadline (movieinfo.resilience.timeouts) and has to pass
+ * the one {@link CircuitBreaker} shared by all operations, since they all hit the same Mongo.
+ * Reads are retried on timeouts and connection trouble with exponential backoff and jitter, a
+ * list only until its first document arrived so nothing is emitted twice. Writes are never
+ * retried: a timed out write may still have been applied. A list's deadline is for its first
+ * document and only starts once the caller asked for one: after that it goes at the reader's
+ * pace, and a slow reader is not the store's fault.
+ *
+ * Only timeouts and connection trouble count as failures for the breaker, and they reach the
+ * caller as {@link MovieInfoStoreUnavailableException} (503), as does a call the open circuit
+ * refused. Anything else, a duplicate key say, passes through untouched.
+ */
+@Component
+@Slf4j
+public class MovieInfoStoreResilience implements MeterBinder {
+
+    private final MovieInfoResilienceProperties properties;
+    private final CircuitBreaker circuitBreaker;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public MovieInfoStoreResilience(MovieInfoResilienceProperties properties) {
+        this.properties = properties;
+        var breaker = properties.getCircuitBreaker();
+        this.circuitBreaker = new CircuitBreaker(breaker.getSlidingWindowSize(), breaker.getMinimumCalls(),
+                breaker.getFailureRateThreshold(), breaker.getOpenDuration(), breaker.getHalfOpenCalls(), System::nanoTime);
+    }
+
+    public <T> Mono<T> read(String operation, Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        return attempt(operation, call)
+                .retryWhen(retry(operation, ex -> true))
+                .onErrorMap(MovieInfoStoreResilience::isTransient, ex -> unavailable(operation, ex));
+    }
+
+    public <T> Flux<T> read(String operation, Flux<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        return Flux.defer(() -> {
+            var emitted = new AtomicBoolean();
+            return attempt(operation, call)
+                    .doOnNext(element -> emitted.lazySet(true))
+                    .retryWhen(retry(operation, ex -> !emitted.get()));
+        }).onErrorMap(MovieInfoStoreResilience::isTransient, ex -> unavailable(operation, ex));
+    }
+
+    public <T> Mono<T> write(String operation, Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        return attempt(operation, call)
+                .onErrorMap(MovieInfoStoreResilience::isTransient, ex -> unavailable(operation, ex));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("movieinfo.resilience.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Mongo circuit breaker state, 0 closed, 1 half open, 2 open")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.resilience.rejected", circuitBreaker, CircuitBreaker::getRejected)
+                .description("Repository calls refused by the open circuit")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.resilience.retries", retries, AtomicLong::get)
+                .description("Repository reads retried")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.resilience.timeouts", timeouts, AtomicLong::get)
+                .description("Repository call attempts over their deadline")
+                .register(registry);
+    }
+
+    private <T> Mono<T> attempt(String operation, Mono<T> call) {
+        var timeout = properties.timeoutOf(operation);
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Mono.error(new MovieInfoStoreUnavailableException("MovieInfo store circuit breaker is open"));
+            }
+            return call.timeout(timeout)
+                    .doOnSuccess(value -> circuitBreaker.onSuccess())
+                    .doOnError(this::recordFailure)
+                    .doOnCancel(circuitBreaker::onCancel);
+        });
+    }
+
+    private <T> Flux<T> attempt(String operation, Flux<T> call) {
+        var timeout = properties.timeoutOf(operation);
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Flux.error(new MovieInfoStoreUnavailableException("MovieInfo store circuit breaker is open"));
+            }
+            var requested = Sinks.<Void>empty();
+            return call.timeout(requested.asMono().then(Mono.delay(timeout)), element -> Mono.never())
+                    .doOnRequest(n -> requested.tryEmitEmpty())
+                    .doOnComplete(circuitBreaker::onSuccess)
+                    .doOnError(this::recordFailure)
+                    .doOnCancel(circuitBreaker::onCancel);
+        });
+    }
+
+    private void recordFailure(Throwable ex) {
+        if (ex instanceof TimeoutException) {
+            timeouts.incrementAndGet();
+        }
+        if (isTransient(ex)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    private Retry retry(String operation, Predicate<Throwable> retryable) {
+        var retry = properties.getRetry();
+        return Retry.backoff(retry.getMaxRetries(), retry.getMinBackoff())
+                .maxBackoff(retry.getMaxBackoff())
+                .jitter(retry.getJitter())
+                .filter(ex -> isTransient(ex) && retryable.test(ex))
+                .doBeforeRetry(signal -> {
+                    retries.incrementAndGet();
+                    log.debug("Retrying {} after {}", operation, signal.failure().toString());
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static boolean isTransient(Throwable ex) {
+        return ex instanceof TimeoutException
+                || ex instanceof DataAccessResourceFailureException
+                || ex instanceof TransientDataAccessException
+                || ex instanceof MongoTimeoutException
+                || ex instanceof MongoSocketException;
+    }
+
+    private static MovieInfoStoreUnavailableException unavailable(String operation, Throwable ex) {
+        return new MovieInfoStoreUnavailableException("MovieInfo store did not answer " + operation + ": " + ex, ex);
+    }
+}
@@ -0,0 +1,288 @@
+package com.reactivespring.search;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoSearchHit;
+import com.reactivespring.domain.MovieInfoSearchPage;
+import com.reactivespring.exceptions.SearchIndexNotReadyException;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process inverted index over MovieInfo name and cast.
+ *
+ * Terms are lower-cased words kept in a sorted map, so a query token matches the term itself
+ * and every longer term it is a prefix of ("bat" finds "batman"). All query tokens must match.
+ * A hit scores the field weight (name 2, cast 1) per token, halved when it only matched as a
+ * prefix, and results are ranked by score then name.
+ *
+ * The index is kept current from {@link MovieInfoChangeStream}, so with the MONGO stream source it
+ * also sees other nodes' writes. Like MovieInfoAggregates it is rebuilt from Mongo at startup, every
+ * {@code rebuild-interval} and whenever the event sequence has a gap, a failed rebuild is tried
+ * again at the next of these. Events arriving during a rebuild are replayed on top of it, so a
+ * movie changed or deleted while it streams ends up as the change stream has it. Until the first
+ * rebuild completes {@link #search} throws SearchIndexNotReadyException (503).
+ */
+@Component
+@Slf4j
+public class MovieInfoSearchIndex {
+
+    private static final float NAME_WEIGHT = 2f;
+    private static final float CAST_WEIGHT = 1f;
+    private static final double PREFIX_FACTOR = 0.5;
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private final MovieInfoRepository movieInfoRepository;
+    private final MovieInfoChangeStream movieInfoChangeStream;
+    private final boolean enabled;
+    private final int maxPageSize;
+    private final Duration rebuildInterval;
+
+    // replaced by a rebuild, written under the lock of this, read without it
+    private volatile State state = new State();
+    // non-null while a rebuild is loading, guarded by this
+    private List<MovieInfoEvent> pending;
+
+    private final AtomicLong lastSequence = new AtomicLong();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+    private volatile boolean ready;
+
+    public MovieInfoSearchIndex(MovieInfoRepository movieInfoRepository,
+                                MovieInfoChangeStream movieInfoChangeStream,
+                                @Value("${movieinfo.search.enabled:true}") boolean enabled,
+                                @Value("${movieinfo.search.max-page-size:100}") int maxPageSize,
+                                @Value("${movieinfo.search.rebuild-interval:1h}") Duration rebuildInterval) {
+        this.movieInfoRepository = movieInfoRepository;
+        this.movieInfoChangeStream = movieInfoChangeStream;
+        this.enabled = enabled;
+        this.maxPageSize = maxPageSize;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // follow the change stream before the first rebuild so nothing written during it is missed
+        lastSequence.set(movieInfoChangeStream.getHeadSequence());
+        subscriptions.add(Flux.defer(() -> movieInfoChangeStream.subscribe(lastSequence.get()))
+                .doOnNext(this::onEvent)
+                .retry()
+                .subscribe());
+        subscriptions.add(Flux.interval(Duration.ZERO, rebuildInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> rebuild()
+                        .onErrorResume(ex -> {
+                            log.error("Loading the movie info search index failed", ex);
+                            return Mono.empty();
+                        }))
+                .subscribe());
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return state.documents.size();
+    }
+
+    public MovieInfoSearchPage search(String query, int page, int size) {
+        if (!ready) {
+            throw new SearchIndexNotReadyException("Movie info search index is still loading");
+        }
+        var state = this.state;
+        var pageSize = Math.max(1, Math.min(size, maxPageSize));
+        var pageNumber = Math.max(0, page);
+        var tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return new MovieInfoSearchPage(List.of(), 0, pageNumber, pageSize);
+        }
+
+        Map<String, Double> scores = null;
+        for (var token : tokens) {
+            var tokenScores = state.scoresFor(token);
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                scores.keySet().retainAll(tokenScores.keySet());
+                scores.replaceAll((id, score) -> score + tokenScores.get(id));
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+
+        var ranked = scores.entrySet().stream()
+                .map(entry -> new MovieInfoSearchHit(state.documents.get(entry.getKey()), entry.getValue()))
+                .filter(hit -> hit.getMovieInfo() != null)
+                .sorted(Comparator.comparingDouble(MovieInfoSearchHit::getScore).reversed()
+                        .thenComparing(hit -> hit.getMovieInfo().getName(), Comparator.nullsLast(Comparator.<String>naturalOrder())))
+                .collect(Collectors.toList());
+
+        var from = (int) Math.min((long) pageNumber * pageSize, ranked.size());
+        var to = Math.min(from + pageSize, ranked.size());
+        return new MovieInfoSearchPage(ranked.subList(from, to), ranked.size(), pageNumber, pageSize);
+    }
+
+    public synchronized void index(MovieInfo movieInfo) {
+        state.index(movieInfo);
+    }
+
+    public synchronized void remove(String id) {
+        state.remove(id);
+    }
+
+    /**
+     * Reloads everything from Mongo and swaps the result in. A no-op while another rebuild runs.
+     */
+    public Mono<Void> rebuild() {
+        return Mono.defer(() -> {
+            if (!rebuilding.compareAndSet(false, true)) {
+                return Mono.<Void>empty();
+            }
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            var fresh = new State();
+            return movieInfoRepository.findAll()
+                    // an older version than the change stream already brought is fixed by the replay below
+                    .doOnNext(fresh::index)
+                    .then(Mono.<Void>fromRunnable(() -> {
+                        synchronized (this) {
+                            pending.forEach(fresh::apply);
+                            pending = null;
+                            state = fresh;
+                        }
+                        ready = true;
+                        log.info("Movie info search index loaded, {} movies", fresh.documents.size());
+                    }))
+                    .doFinally(signalType -> {
+                        synchronized (this) {
+                            pending = null;
+                        }
+                        rebuilding.set(false);
+                    });
+        });
+    }
+
+    public synchronized void apply(MovieInfoEvent event) {
+        state.apply(event);
+        if (pending != null) {
+            pending.add(event);
+        }
+    }
+
+    private void onEvent(MovieInfoEvent event) {
+        var gap = event.getSequence() > lastSequence.getAndSet(event.getSequence()) + 1;
+        apply(event);
+        if (gap) {
+            log.info("Movie info search index missed events before sequence {}, rebuilding", event.getSequence());
+            rebuild().subscribe(null, ex -> log.error("Loading the movie info search index failed", ex));
+        }
+    }
+
+    private static Map<String, Float> termsOf(MovieInfo movieInfo) {
+        var terms = new HashMap<String, Float>();
+        tokenize(movieInfo.getName()).forEach(term -> terms.merge(term, NAME_WEIGHT, Math::max));
+        if (movieInfo.getCast() != null) {
+            movieInfo.getCast().forEach(member ->
+                    tokenize(member).forEach(term -> terms.merge(term, CAST_WEIGHT, Math::max)));
+        }
+        return terms;
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return Arrays.stream(TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    // written by the loading rebuild, or under the index lock once swapped in; searches read it without locking
+    private static final class State {
+        // term -> (movieInfoId -> best field weight of the term in that movie)
+        private final ConcurrentSkipListMap<String, Map<String, Float>> postings = new ConcurrentSkipListMap<>();
+        private final Map<String, MovieInfo> documents = new ConcurrentHashMap<>();
+
+        void apply(MovieInfoEvent event) {
+            // carries no movie, the resent movies before it were indexed like inserts
+            if (event.getType() == MovieInfoChangeType.RESYNC) {
+                return;
+            }
+            if (event.getType() == MovieInfoChangeType.DELETE) {
+                remove(event.getMovieInfo().getMovieInfoId());
+            } else {
+                index(event.getMovieInfo());
+            }
+        }
+
+        void index(MovieInfo movieInfo) {
+            var id = movieInfo.getMovieInfoId();
+            if (id == null) {
+                return;
+            }
+            remove(id);
+            documents.put(id, movieInfo);
+            termsOf(movieInfo).forEach((term, weight) ->
+                    postings.computeIfAbsent(term, key -> new ConcurrentHashMap<>()).put(id, weight));
+        }
+
+        void remove(String id) {
+            var previous = id == null ? null : documents.remove(id);
+            if (previous == null) {
+                return;
+            }
+            termsOf(previous).keySet().forEach(term -> postings.computeIfPresent(term, (key, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            }));
+        }
+
+        Map<String, Double> scoresFor(String token) {
+            var tokenScores = new HashMap<String, Double>();
+            // the exact term and every longer term starting with the token
+            postings.subMap(token, true, token + Character.MAX_VALUE, true).forEach((term, ids) -> {
+                var factor = term.length() == token.length() ? 1.0 : PREFIX_FACTOR;
+                ids.forEach((id, weight) -> tokenScores.merge(id, weight * factor, Math::max));
+            });
+            return tokenScores;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.metrics.ReactiveTimers;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.reactivespring.metrics.ReactiveTimers.REPOSITORY;
+
+/**
+ * Looks movie infos up by id with findAllById ($in) queries.
+ *
+ * {@link #loadAll(List)} splits a large id list into chunks of movieinfo.batch.chunk-size ids.
+ * {@link #load(String)} with movieinfo.batch.coalesce on coalesces: ids asked for within
+ * coalesce-window of the first one go to Mongo as one query, which is sent early once
+ * coalesce-max-size ids are waiting. That trades up to one window of latency on every cache miss
+ * for far fewer round trips under heavy load, so it is off by default and every id is a findById
+ * of its own. An id whose callers all went away before the query is sent is left out of it.
+ *
+ * Queries and ids are counted as movieinfo.batch.queries / movieinfo.batch.ids, their ratio
+ * is the average batch size.
+ */
+@Component
+public class MovieInfoBatchLoader implements MeterBinder {
+
+    // chunks of one loadAll queried at the same time
+    private static final int CHUNK_CONCURRENCY = 4;
+
+    private final MovieInfoRepository movieInfoRepository;
+    private final ReactiveTimers timers;
+    private final MovieInfoStoreResilience resilience;
+    private final int chunkSize;
+    private final boolean coalesce;
+    private final Duration coalesceWindow;
+    private final int coalesceMaxSize;
+
+    // id -> everyone waiting for it, guarded by this
+    private Map<String, List<MonoSink<MovieInfo>>> pending = new LinkedHashMap<>();
+    private Disposable scheduledFlush;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong();
+
+    public MovieInfoBatchLoader(MovieInfoRepository movieInfoRepository, ReactiveTimers timers,
+                                MovieInfoStoreResilience resilience,
+                                @Value("${movieinfo.batch.chunk-size:200}") int chunkSize,
+                                @Value("${movieinfo.batch.coalesce:false}") boolean coalesce,
+                                @Value("${movieinfo.batch.coalesce-window:2ms}") Duration coalesceWindow,
+                                @Value("${movieinfo.batch.coalesce-max-size:100}") int coalesceMaxSize) {
+        this.movieInfoRepository = movieInfoRepository;
+        this.timers = timers;
+        this.resilience = resilience;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.coalesce = coalesce;
+        this.coalesceWindow = coalesceWindow;
+        this.coalesceMaxSize = Math.max(1, coalesceMaxSize);
+    }
+
+    public Mono<MovieInfo> load(String id) {
+        if (!coalesce) {
+            return resilience.read("findById", timers.time(REPOSITORY, "findById", movieInfoRepository.findById(id)));
+        }
+        return Mono.create(sink -> {
+            sink.onCancel(() -> dequeue(id, sink));
+            enqueue(id, sink);
+        });
+    }
+
+    /**
+     * The movie infos that exist among {@code ids}, in no particular order.
+     */
+    public Flux<MovieInfo> loadAll(List<String> ids) {
+        var chunks = new ArrayList<List<String>>();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            chunks.add(ids.subList(from, Math.min(from + chunkSize, ids.size())));
+        }
+        return Flux.fromIterable(chunks).flatMap(this::query, CHUNK_CONCURRENCY);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("movieinfo.batch.queries", queries, AtomicLong::get)
+                .description("findAllById queries sent")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.batch.ids", ids, AtomicLong::get)
+                .description("Ids looked up by findAllById queries")
+                .register(registry);
+    }
+
+    private void enqueue(String id, MonoSink<MovieInfo> sink) {
+        Map<String, List<MonoSink<MovieInfo>>> full = null;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                scheduledFlush = Schedulers.parallel().schedule(this::flush, coalesceWindow.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            pending.computeIfAbsent(id, key -> new ArrayList<>(1)).add(sink);
+            if (pending.size() >= coalesceMaxSize) {
+                full = pending;
+                pending = new LinkedHashMap<>();
+                scheduledFlush.dispose();
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    // a no-op once the batch holding the sink was sent
+    private void dequeue(String id, MonoSink<MovieInfo> sink) {
+        synchronized (this) {
+            var sinks = pending.get(id);
+            if (sinks == null || !sinks.remove(sink) || !sinks.isEmpty()) {
+                return;
+            }
+            pending.remove(id);
+            if (pending.isEmpty()) {
+                scheduledFlush.dispose();
+            }
+        }
+    }
+
+    private void flush() {
+        Map<String, List<MonoSink<MovieInfo>>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        send(batch);
+    }
+
+    private void send(Map<String, List<MonoSink<MovieInfo>>> batch) {
+        var found = new HashMap<String, MovieInfo>();
+        query(new ArrayList<>(batch.keySet())).subscribe(
+                movieInfo -> found.put(movieInfo.getMovieInfoId(), movieInfo),
+                ex -> batch.values().forEach(sinks -> sinks.forEach(sink -> sink.error(ex))),
+                () -> batch.forEach((id, sinks) -> {
+                    var movieInfo = found.get(id);
+                    sinks.forEach(sink -> {
+                        if (movieInfo == null) {
+                            sink.success();
+                        } else {
+                            sink.success(movieInfo);
+                        }
+                    });
+                }));
+    }
+
+    private Flux<MovieInfo> query(List<String> chunk) {
+        return Flux.defer(() -> {
+            queries.incrementAndGet();
+            ids.addAndGet(chunk.size());
+            return resilience.read("findAllById", timers.time(REPOSITORY, "findAllById", movieInfoRepository.findAllById(chunk)));
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.domain.BulkIngestResult;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.StreamSource;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk load of MovieInfo documents. Elements are validated one by one as they are decoded,
+ * grouped into batches of {@code movieinfo.bulk.batch-size} (or whatever arrived within
+ * movieinfo.bulk.batch-timeout, so a slow upload still gets its results as it goes) and written
+ * with one unordered bulkWrite per batch, so a duplicate id only fails its own element. At most
+ * batch-size * write-concurrency elements are held in memory at any time.
+ *
+ * A batch is published to the change stream in chunks of half a subscriber queue, each one
+ * waiting up to movieinfo.bulk.publish-wait for every stream subscriber to have room for it.
+ * A subscriber that didn't make room by then gets the chunk anyway and the backpressure policy
+ * decides: DROP_OLDEST loses events, DISCONNECT cuts it so it resumes with Last-Event-ID.
+ */
+@Service
+@Slf4j
+public class MovieInfoBulkIngestService {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Validator validator;
+    private final MovieInfoCache movieInfoCache;
+    private final MovieInfoChangeStream movieInfoChangeStream;
+    private final int batchSize;
+    private final int writeConcurrency;
+    private final Duration batchTimeout;
+    private final Duration publishWait;
+
+    public MovieInfoBulkIngestService(ReactiveMongoTemplate reactiveMongoTemplate,
+                                      Validator validator,
+                                      MovieInfoCache movieInfoCache,
+                                      MovieInfoChangeStream movieInfoChangeStream,
+                                      @Value("${movieinfo.bulk.batch-size:1000}") int batchSize,
+                                      @Value("${movieinfo.bulk.write-concurrency:2}") int writeConcurrency,
+                                      @Value("${movieinfo.bulk.batch-timeout:200ms}") Duration batchTimeout,
+                                      @Value("${movieinfo.bulk.publish-wait:100ms}") Duration publishWait) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.validator = validator;
+        this.movieInfoCache = movieInfoCache;
+        this.movieInfoChangeStream = movieInfoChangeStream;
+        this.batchSize = batchSize;
+        this.writeConcurrency = writeConcurrency;
+        this.batchTimeout = batchTimeout;
+        this.publishWait = publishWait;
+    }
+
+    public Flux<BulkIngestResult> ingest(Flux<MovieInfo> movieInfos) {
+        return movieInfos
+                .index()
+                .bufferTimeout(batchSize, batchTimeout)
+                .flatMapSequential(this::writeBatch, writeConcurrency);
+    }
+
+    private Flux<BulkIngestResult> writeBatch(List<Tuple2<Long, MovieInfo>> batch) {
+        var results = new BulkIngestResult[batch.size()];
+        var accepted = new ArrayList<MovieInfo>();
+        var positions = new ArrayList<Integer>();
+        var documents = new ArrayList<InsertOneModel<Document>>();
+
+        for (int position = 0; position < batch.size(); position++) {
+            long index = batch.get(position).getT1();
+            var movieInfo = batch.get(position).getT2();
+            var error = validate(movieInfo);
+            if (error != null) {
+                results[position] = BulkIngestResult.rejected(index, movieInfo.getMovieInfoId(), error);
+                continue;
+            }
+            if (movieInfo.getMovieInfoId() == null) {
+                // same as repository.save, the id is stored as an ObjectId
+                movieInfo.setMovieInfoId(new ObjectId().toHexString());
+            }
+            // first version, like an insert through the repository
+            movieInfo.setVersion(0L);
+            movieInfo.setLastModified(Instant.now());
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(movieInfo, document);
+            documents.add(new InsertOneModel<>(document));
+            accepted.add(movieInfo);
+            positions.add(position);
+        }
+
+        if (documents.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(documents, new BulkWriteOptions().ordered(false))))
+                .map(bulkWriteResult -> Map.<Integer, String>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage))))
+                .flatMapMany(failures -> {
+                    var written = new ArrayList<MovieInfo>(accepted.size());
+                    for (int i = 0; i < accepted.size(); i++) {
+                        int position = positions.get(i);
+                        long index = batch.get(position).getT1();
+                        var movieInfo = accepted.get(i);
+                        var failure = failures.get(i);
+                        if (failure == null) {
+                            results[position] = BulkIngestResult.accepted(index, movieInfo.getMovieInfoId());
+                            movieInfoCache.put(movieInfo);
+                            written.add(movieInfo);
+                        } else {
+                            results[position] = BulkIngestResult.rejected(index, movieInfo.getMovieInfoId(), failure);
+                        }
+                    }
+                    log.debug("Bulk batch written: {} accepted, {} rejected", written.size(), batch.size() - written.size());
+                    // published whether or not the caller is still there for the results
+                    var published = publishInserts(written).cache();
+                    published.subscribe(null, ex -> log.error("Publishing bulk inserts to the change stream failed", ex));
+                    return published.thenMany(Flux.fromArray(results));
+                });
+    }
+
+    private Mono<Void> publishInserts(List<MovieInfo> written) {
+        if (movieInfoChangeStream.getSource() != StreamSource.LOCAL) {
+            return Mono.empty();
+        }
+        var chunkSize = Math.max(1, movieInfoChangeStream.getSubscriberBufferSize() / 2);
+        return Flux.range(0, (written.size() + chunkSize - 1) / chunkSize)
+                .concatMap(chunk -> {
+                    var events = written.subList(chunk * chunkSize, Math.min(written.size(), (chunk + 1) * chunkSize));
+                    return roomFor(events.size())
+                            .then(Mono.fromRunnable(() -> movieInfoChangeStream.recordLocalChanges(MovieInfoChangeType.INSERT, events)));
+                })
+                .then();
+    }
+
+    // until every stream subscriber has room for the events or publish-wait is up
+    private Mono<Void> roomFor(int events) {
+        return Mono.fromCallable(() -> movieInfoChangeStream.hasRoomFor(events))
+                .filter(room -> room)
+                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(5)))
+                .timeout(publishWait, Mono.just(false))
+                .then();
+    }
+
+    // same message format as GlobalExceptionHandle for a single invalid POST
+    private String validate(MovieInfo movieInfo) {
+        var violations = validator.validate(movieInfo);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+}
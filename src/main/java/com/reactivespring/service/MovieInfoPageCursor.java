@@ -0,0 +1,46 @@
+package com.reactivespring.service;
+
+import com.reactivespring.exceptions.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Opaque continuation token for keyset paging: the year filter the page was produced for and
+ * the last _id it contained, base64url encoded so clients don't start building their own.
+ */
+final class MovieInfoPageCursor {
+
+    private static final String VERSION = "v1";
+
+    private MovieInfoPageCursor() {
+    }
+
+    static String encode(Integer year, String lastId) {
+        var raw = VERSION + ":" + (year == null ? "" : year) + ":" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the last id of the previous page
+     */
+    static String decode(String cursor, Integer year) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidCursorException("Malformed cursor");
+        }
+        // the id is last and may itself contain ':'
+        var parts = raw.split(":", 3);
+        if (parts.length != 3 || !VERSION.equals(parts[0]) || parts[2].isEmpty()) {
+            throw new InvalidCursorException("Malformed cursor");
+        }
+        var cursorYear = parts[1].isEmpty() ? null : parts[1];
+        if (!Objects.equals(cursorYear, year == null ? null : year.toString())) {
+            throw new InvalidCursorException("Cursor was issued for a different year");
+        }
+        return parts[2];
+    }
+}
@@ -1,52 +1,267 @@
 package com.reactivespring.service;
 
+import com.reactivespring.cache.MovieInfoCache;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBatch;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.domain.MovieInfoSummary;
+import com.reactivespring.exceptions.InvalidBatchException;
+import com.reactivespring.exceptions.InvalidCursorException;
+import com.reactivespring.exceptions.MovieInfoStoreUnavailableException;
+import com.reactivespring.exceptions.MovieInfoVersionConflictException;
+import com.reactivespring.logging.SignalTracer;
+import com.reactivespring.metrics.ReactiveTimers;
+import com.reactivespring.replica.MovieInfoReplica;
+import com.reactivespring.repository.MovieInfoReadRepository;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.reactivespring.metrics.ReactiveTimers.REPOSITORY;
+import static com.reactivespring.metrics.ReactiveTimers.SERVICE;
+
 @Service
 public class MovieInfoService {
 
     private MovieInfoRepository movieInfoRepository;
 
-    public MovieInfoService(MovieInfoRepository movieInfoRepository) {
+    // secondaryPreferred, only for the list endpoints
+    private MovieInfoReadRepository movieInfoReadRepository;
+
+    private MovieInfoCache movieInfoCache;
+
+    private ReactiveTimers timers;
+
+    private MovieInfoStoreResilience resilience;
+
+    // by id lookups on the cache misses
+    private MovieInfoBatchLoader movieInfoBatchLoader;
+
+    // inserts when movieinfo.write-batch.enabled
+    private MovieInfoWriteBatcher movieInfoWriteBatcher;
+
+    // answers the list, year, name and id reads once loaded, when movieinfo.replica.enabled
+    private MovieInfoReplica movieInfoReplica;
+
+    private int maxPageSize;
+
+    private int maxBatchIds;
+
+    public MovieInfoService(MovieInfoRepository movieInfoRepository, MovieInfoReadRepository movieInfoReadRepository,
+                            MovieInfoCache movieInfoCache, ReactiveTimers timers, MovieInfoStoreResilience resilience,
+                            MovieInfoBatchLoader movieInfoBatchLoader, MovieInfoWriteBatcher movieInfoWriteBatcher,
+                            MovieInfoReplica movieInfoReplica,
+                            @Value("${movieinfo.pagination.max-page-size:500}") int maxPageSize,
+                            @Value("${movieinfo.batch.max-ids:1000}") int maxBatchIds) {
         this.movieInfoRepository = movieInfoRepository;
+        this.movieInfoReadRepository = movieInfoReadRepository;
+        this.movieInfoCache = movieInfoCache;
+        this.timers = timers;
+        this.resilience = resilience;
+        this.movieInfoBatchLoader = movieInfoBatchLoader;
+        this.movieInfoWriteBatcher = movieInfoWriteBatcher;
+        this.movieInfoReplica = movieInfoReplica;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchIds = maxBatchIds;
     }
 
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo){
-        return movieInfoRepository.save(movieInfo);
+        // always an insert, a client supplied version would turn save into a versioned update
+        movieInfo.setVersion(null);
+        // batched, the Mono still only completes once its batch is written
+        var saved = movieInfoWriteBatcher.isEnabled()
+                ? movieInfoWriteBatcher.insert(movieInfo)
+                : write("save", movieInfoRepository.save(movieInfo));
+        return timers.time(SERVICE, "addMovieInfo", saved.doOnNext(movieInfoCache::put));
     }
 
     public Flux<MovieInfo> getAllMovieInfos() {
-        return movieInfoRepository.findAll();
+        var movieInfos = movieInfoReplica.isReady()
+                ? movieInfoReplica.findAll()
+                // primary: the ETag comes from the watermarks, a secondary may not have the writes behind it yet
+                : read("findAll", movieInfoRepository.findAll());
+        return timers.time(SERVICE, "getAllMovieInfos", movieInfos);
     }
+
+    /**
+     * Keyset page over all movie infos, or the ones of {@code year}. size is capped at
+     * movieinfo.pagination.max-page-size.
+     */
+    public Mono<MovieInfoPage> getMovieInfoPage(Integer year, String cursor, int size) {
+        var pageSize = Math.max(1, Math.min(size, maxPageSize));
+        String afterId;
+        try {
+            afterId = cursor == null ? null : MovieInfoPageCursor.decode(cursor, year);
+        } catch (InvalidCursorException ex) {
+            return Mono.error(ex);
+        }
+        // one extra row tells us whether there is a next page
+        return timers.time(SERVICE, "getMovieInfoPage", read("findPage",
+                movieInfoReadRepository.findPage(year, afterId, pageSize + 1))
+                .collectList()
+                .map(movieInfos -> {
+                    if (movieInfos.size() <= pageSize) {
+                        return new MovieInfoPage(movieInfos, null);
+                    }
+                    var content = movieInfos.subList(0, pageSize);
+                    var last = content.get(pageSize - 1).getMovieInfoId();
+                    return new MovieInfoPage(content, MovieInfoPageCursor.encode(year, last));
+                }));
+    }
+
     public Mono<MovieInfo> getMovieInfoById(String id) {
-        return movieInfoRepository.findById(id).log();
+        var cached = Mono.defer(() -> movieInfoCache.get(id, movieInfoBatchLoader::load)
+                // Mongo down or the circuit open: an older copy beats a 503
+                .onErrorResume(MovieInfoStoreUnavailableException.class,
+                        ex -> movieInfoCache.getStale(id).switchIfEmpty(Mono.error(ex))));
+        // the replica may not have seen a write yet (our own included), a miss is not a 404
+        var movieInfo = movieInfoReplica.isReady()
+                ? movieInfoReplica.findById(id).switchIfEmpty(cached)
+                : cached;
+        return timers.time(SERVICE, "getMovieInfoById", SignalTracer.trace("MovieInfoService.getMovieInfoById", movieInfo));
     }
 
-    public Mono<MovieInfo> updateMovieInfoById(MovieInfo updatedMovieInfo, String id) {
-        return movieInfoRepository.findById(id).flatMap( movieInfo -> {
-                movieInfo.setYear(updatedMovieInfo.getYear());
-                movieInfo.setCast(updatedMovieInfo.getCast());
-                movieInfo.setName(updatedMovieInfo.getName());
-                movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                movieInfo.setMovieInfoId(id);
-                return movieInfoRepository.save(movieInfo).log();
-        });
+    /**
+     * The movie infos of {@code ids} in request order, plus the ids that don't exist. Cached ids
+     * come from the cache, the others from findAllById queries. At most movieinfo.batch.max-ids ids.
+     */
+    public Mono<MovieInfoBatch> getMovieInfosByIds(List<String> ids) {
+        if (ids.size() > maxBatchIds) {
+            return Mono.error(new InvalidBatchException("At most " + maxBatchIds + " ids per batch, got " + ids.size()));
+        }
+        var distinctIds = new ArrayList<String>(new LinkedHashSet<>(ids));
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty()) {
+            return Mono.just(new MovieInfoBatch(List.of(), List.of()));
+        }
+        var movieInfos = movieInfoCache.getAll(distinctIds, movieInfoBatchLoader::loadAll)
+                // like getMovieInfoById, but only when there is an older copy of every id
+                .onErrorResume(MovieInfoStoreUnavailableException.class, ex -> {
+                    var stale = movieInfoCache.getAllStale(distinctIds);
+                    return stale.size() == distinctIds.size() ? Mono.just(stale) : Mono.error(ex);
+                })
+                .map(found -> {
+                    var content = new ArrayList<MovieInfo>(found.size());
+                    var missing = new ArrayList<String>();
+                    distinctIds.forEach(id -> {
+                        var movieInfo = found.get(id);
+                        if (movieInfo == null) {
+                            missing.add(id);
+                        } else {
+                            content.add(movieInfo);
+                        }
+                    });
+                    return new MovieInfoBatch(content, missing);
+                });
+        return timers.time(SERVICE, "getMovieInfosByIds", movieInfos);
+    }
 
+    /**
+     * Full replacement of the editable fields in one findAndModify. With expectedVersions only those
+     * versions are replaced, any other fails with {@link MovieInfoVersionConflictException}.
+     * Empty when there is no movie info with this id.
+     */
+    public Mono<MovieInfo> updateMovieInfoById(MovieInfo updatedMovieInfo, String id, Set<Long> expectedVersions) {
+        var fields = new LinkedHashMap<String, Object>();
+        fields.put("name", updatedMovieInfo.getName());
+        fields.put("year", updatedMovieInfo.getYear());
+        fields.put("cast", updatedMovieInfo.getCast());
+        fields.put("release_date", updatedMovieInfo.getRelease_date());
+        return timers.time(SERVICE, "updateMovieInfoById", updateFields(id, expectedVersions, fields));
+    }
+
+    /**
+     * Like {@link #updateMovieInfoById} but only the non-null fields of {@code changes} are set.
+     */
+    public Mono<MovieInfo> patchMovieInfoById(MovieInfo changes, String id, Set<Long> expectedVersions) {
+        var fields = new LinkedHashMap<String, Object>();
+        if (changes.getName() != null) {
+            fields.put("name", changes.getName());
+        }
+        if (changes.getYear() != null) {
+            fields.put("year", changes.getYear());
+        }
+        if (changes.getCast() != null) {
+            fields.put("cast", changes.getCast());
+        }
+        if (changes.getRelease_date() != null) {
+            fields.put("release_date", changes.getRelease_date());
+        }
+        if (fields.isEmpty()) {
+            // nothing to write, answer with the current document if the precondition holds
+            return timers.time(SERVICE, "patchMovieInfoById",
+                    read("findById", movieInfoRepository.findById(id))
+                            .flatMap(movieInfo -> expectedVersions == null || expectedVersions.contains(movieInfo.getVersion())
+                                    ? Mono.just(movieInfo)
+                                    : Mono.error(versionConflict(id, expectedVersions))));
+        }
+        return timers.time(SERVICE, "patchMovieInfoById", updateFields(id, expectedVersions, fields));
+    }
 
+    private Mono<MovieInfo> updateFields(String id, Set<Long> expectedVersions, Map<String, Object> fields) {
+        var updated = write("updateFields", movieInfoRepository.updateFields(id, expectedVersions, fields));
+        return SignalTracer.trace("MovieInfoService.updateFields", updated)
+                // no match: 404 unless the id exists with another version, only checked when a version was asked for
+                .switchIfEmpty(expectedVersions == null
+                        ? Mono.empty()
+                        : Mono.defer(() -> read("existsById", movieInfoRepository.existsById(id)))
+                                .flatMap(exists -> exists ? Mono.error(versionConflict(id, expectedVersions)) : Mono.empty()))
+                .doOnNext(movieInfoCache::put);
     }
-    public Mono<Void> deleteMovieById(String id) {
-        return movieInfoRepository.deleteById(id);
+
+    private static MovieInfoVersionConflictException versionConflict(String id, Set<Long> expectedVersions) {
+        return new MovieInfoVersionConflictException("MovieInfo " + id + " is at none of the versions " + expectedVersions);
+    }
+
+    /**
+     * Number of movie infos deleted, 0 when there was none with this id.
+     */
+    public Mono<Long> deleteMovieById(String id) {
+        return timers.time(SERVICE, "deleteMovieById",
+                write("deleteById", movieInfoRepository.deleteByMovieInfoId(id))
+                        .doFinally(signalType -> movieInfoCache.invalidate(id)));
     }
 
     public Flux<MovieInfo> getAllMovieInfosByYear(Integer year) {
-        return movieInfoRepository.findByYear(year);
+        var movieInfos = movieInfoReplica.isReady()
+                ? movieInfoReplica.findByYear(year)
+                : read("findByYear", movieInfoRepository.findByYear(year));
+        return timers.time(SERVICE, "getAllMovieInfosByYear", movieInfos);
+    }
+
+    public Flux<MovieInfoSummary> getMovieInfoSummaries(Integer year) {
+        return timers.time(SERVICE, "getMovieInfoSummaries",
+                read("findSummaries", movieInfoReadRepository.findSummaries(year)));
     }
 
     public Mono<MovieInfo> getMovieInfoByName(String name) {
-        return movieInfoRepository.findByName(name);
+        var fromMongo = Mono.defer(() -> read("findByName", movieInfoReadRepository.findByName(name)));
+        var movieInfo = movieInfoReplica.isReady()
+                ? movieInfoReplica.findByName(name).switchIfEmpty(fromMongo)
+                : fromMongo;
+        return timers.time(SERVICE, "getMovieInfoByName", movieInfo);
+    }
+
+    // each attempt is timed, the deadline / retry / circuit breaker wrap all of them
+    private <T> Mono<T> read(String operation, Mono<T> call) {
+        return resilience.read(operation, timers.time(REPOSITORY, operation, call));
+    }
+
+    private <T> Flux<T> read(String operation, Flux<T> call) {
+        return resilience.read(operation, timers.time(REPOSITORY, operation, call));
+    }
+
+    private <T> Mono<T> write(String operation, Mono<T> call) {
+        return resilience.write(operation, timers.time(REPOSITORY, operation, call));
     }
 }
@@ -0,0 +1,227 @@
+package com.reactivespring.service;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoStoreUnavailableException;
+import com.reactivespring.metrics.ReactiveTimers;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.reactivespring.metrics.ReactiveTimers.REPOSITORY;
+
+/**
+ * Write-behind batching of single inserts for bursty POST load, used by
+ * MovieInfoService.addMovieInfo when movieinfo.write-batch.enabled.
+ *
+ * Inserts arriving within movieinfo.write-batch.window of the first one are written with one
+ * unordered insertMany (a bulkWrite of inserts), sent early once max-size documents are waiting.
+ * Every caller is answered only after Mongo acknowledged the batch with the configured write
+ * concern, with its own document or its own error: a duplicate id fails that insert alone, a lost
+ * connection or an unsatisfied write concern fails all of them. Nothing is acknowledged from
+ * memory, the price is up to one window of extra latency per insert.
+ *
+ * At most max-pending inserts are waiting or being written, more get a 503 right away. An insert
+ * whose caller went away is still written. Batches and documents are counted as
+ * movieinfo.write-batch.flushes / documents.
+ */
+@Component
+public class MovieInfoWriteBatcher implements MeterBinder {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReactiveTimers timers;
+    private final MovieInfoStoreResilience resilience;
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxSize;
+    private final int maxPending;
+
+    // guarded by this
+    private List<PendingInsert> pending = new ArrayList<>();
+    private Disposable scheduledFlush;
+
+    // waiting or being written
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public MovieInfoWriteBatcher(ReactiveMongoTemplate reactiveMongoTemplate, ReactiveTimers timers,
+                                 MovieInfoStoreResilience resilience,
+                                 @Value("${movieinfo.write-batch.enabled:false}") boolean enabled,
+                                 @Value("${movieinfo.write-batch.window:5ms}") Duration window,
+                                 @Value("${movieinfo.write-batch.max-size:500}") int maxSize,
+                                 @Value("${movieinfo.write-batch.max-pending:5000}") int maxPending) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.timers = timers;
+        this.resilience = resilience;
+        this.enabled = enabled;
+        this.window = window;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Inserts {@code movieInfo} with the next batch, an id is assigned when it has none.
+     */
+    public Mono<MovieInfo> insert(MovieInfo movieInfo) {
+        return Mono.create(sink -> {
+            if (inFlight.incrementAndGet() > maxPending) {
+                inFlight.decrementAndGet();
+                rejected.incrementAndGet();
+                sink.error(new MovieInfoStoreUnavailableException("Too many inserts waiting to be written"));
+                return;
+            }
+            Document document;
+            try {
+                document = toDocument(movieInfo);
+            } catch (RuntimeException ex) {
+                inFlight.decrementAndGet();
+                sink.error(ex);
+                return;
+            }
+            enqueue(new PendingInsert(movieInfo, document, sink));
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("movieinfo.write-batch.pending", inFlight, AtomicInteger::get)
+                .description("Inserts waiting for or in a batch write")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.write-batch.flushes", flushes, AtomicLong::get)
+                .description("Batched insertMany writes sent")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.write-batch.documents", documents, AtomicLong::get)
+                .description("Documents written by batched insertMany writes")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.write-batch.rejected", rejected, AtomicLong::get)
+                .description("Inserts refused with max-pending inserts waiting")
+                .register(registry);
+    }
+
+    // same document a repository insert would write
+    private Document toDocument(MovieInfo movieInfo) {
+        if (movieInfo.getMovieInfoId() == null) {
+            movieInfo.setMovieInfoId(new ObjectId().toHexString());
+        }
+        movieInfo.setVersion(0L);
+        movieInfo.setLastModified(Instant.now());
+        var document = new Document();
+        reactiveMongoTemplate.getConverter().write(movieInfo, document);
+        return document;
+    }
+
+    private void enqueue(PendingInsert insert) {
+        List<PendingInsert> full = null;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                scheduledFlush = Schedulers.parallel().schedule(this::flush, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            pending.add(insert);
+            if (pending.size() >= maxSize) {
+                full = pending;
+                pending = new ArrayList<>();
+                scheduledFlush.dispose();
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    private void flush() {
+        List<PendingInsert> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        send(batch);
+    }
+
+    private void send(List<PendingInsert> batch) {
+        flushes.incrementAndGet();
+        documents.addAndGet(batch.size());
+        var models = batch.stream()
+                .map(insert -> new InsertOneModel<>(insert.document))
+                .collect(Collectors.toList());
+        var insertMany = reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(models, new BulkWriteOptions().ordered(false))));
+        resilience.write("insertMany", timers.time(REPOSITORY, "insertMany", insertMany))
+                .map(result -> Map.<Integer, BulkWriteError>of())
+                // per document failures, the others were written
+                .onErrorResume(MongoBulkWriteException.class, ex -> ex.getWriteConcernError() == null
+                        ? Mono.just(ex.getWriteErrors().stream().collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity())))
+                        : Mono.error(ex))
+                .doFinally(signalType -> inFlight.addAndGet(-batch.size()))
+                .subscribe(
+                        failures -> {
+                            for (int index = 0; index < batch.size(); index++) {
+                                var insert = batch.get(index);
+                                var failure = failures.get(index);
+                                if (failure == null) {
+                                    insert.sink.success(insert.movieInfo);
+                                } else {
+                                    insert.sink.error(writeError(failure));
+                                }
+                            }
+                        },
+                        ex -> batch.forEach(insert -> insert.sink.error(ex)));
+    }
+
+    // what the repository's exception translation would have thrown for a single insert
+    private static RuntimeException writeError(BulkWriteError error) {
+        if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+            return new DuplicateKeyException(error.getMessage());
+        }
+        return new DataIntegrityViolationException(error.getMessage());
+    }
+
+    private static final class PendingInsert {
+        private final MovieInfo movieInfo;
+        private final Document document;
+        private final MonoSink<MovieInfo> sink;
+
+        PendingInsert(MovieInfo movieInfo, Document document, MonoSink<MovieInfo> sink) {
+            this.movieInfo = movieInfo;
+            this.document = document;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.reactivespring.stream;
+
+/**
+ * What to do with a stream subscriber whose pending queue is full.
+ */
+public enum BackpressurePolicy {
+    // throw away the oldest pending event and keep the subscriber connected
+    DROP_OLDEST,
+    // terminate the subscriber with a SlowConsumerException, it can resume with Last-Event-ID
+    DISCONNECT
+}
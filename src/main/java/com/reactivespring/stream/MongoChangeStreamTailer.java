@@ -0,0 +1,236 @@
+package com.reactivespring.stream;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.StreamResumeToken;
+import com.reactivespring.repository.StreamResumeTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.util.BsonUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Feeds {@link MovieInfoChangeStream} from a MongoDB change stream on the movieInfo collection,
+ * so the stream sees writes from every node and not just the POSTs handled by this JVM.
+ *
+ * There is one upstream cursor per node no matter how many clients are subscribed. The last
+ * processed resume token is flushed to movieInfoStreamResumeTokens periodically and on shutdown;
+ * after a restart the cursor resumes from there, so events are re-delivered rather than lost.
+ *
+ * A token the server can't resume from any more (the oplog rolled past it, or it is garbage) is
+ * deleted and the cursor starts over from now. The events in between are lost, so the change
+ * stream is reset and its subscribers resync from Mongo.
+ */
+@Component
+@ConditionalOnProperty(name = "movieinfo.stream.source", havingValue = "MONGO")
+@Slf4j
+public class MongoChangeStreamTailer {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final StreamResumeTokenRepository streamResumeTokenRepository;
+    private final MovieInfoChangeStream movieInfoChangeStream;
+    private final MovieInfoCache movieInfoCache;
+    private final String nodeId;
+    private final Duration tokenFlushInterval;
+
+    // what the drivers resume on by themselves, see the change streams spec
+    private static final Set<Integer> RESUMABLE_CODES = Set.of(
+            6, 7, 43, 63, 89, 91, 133, 150, 189, 234, 262, 9001, 10107, 11600, 11602, 13388, 13435, 13436);
+
+    private final AtomicReference<String> lastToken = new AtomicReference<>();
+    private volatile String flushedToken;
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    public MongoChangeStreamTailer(ReactiveMongoTemplate reactiveMongoTemplate,
+                                   StreamResumeTokenRepository streamResumeTokenRepository,
+                                   MovieInfoChangeStream movieInfoChangeStream,
+                                   MovieInfoCache movieInfoCache,
+                                   @Value("${movieinfo.stream.node-id:${HOSTNAME:local}}") String nodeId,
+                                   @Value("${movieinfo.stream.resume-token-flush-interval:1s}") Duration tokenFlushInterval) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.streamResumeTokenRepository = streamResumeTokenRepository;
+        this.movieInfoChangeStream = movieInfoChangeStream;
+        this.movieInfoCache = movieInfoCache;
+        this.nodeId = nodeId;
+        this.tokenFlushInterval = tokenFlushInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        var tail = streamResumeTokenRepository.findById(nodeId)
+                .map(StreamResumeToken::getToken)
+                .doOnNext(token -> log.info("Resuming movieInfo change stream for node {}", nodeId))
+                .map(BsonDocument::parse)
+                .map(this::listen)
+                .defaultIfEmpty(Flux.defer(() -> listen(null)))
+                .flatMapMany(events -> events)
+                .doOnNext(this::onChange)
+                // retrying with the same token would fail forever
+                .onErrorResume(MongoChangeStreamTailer::isUnresumable, ex -> forgetToken(ex).then(Mono.error(ex)))
+                // on failure resubscribe from the last token we processed, not the one we started with
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> log.warn("MovieInfo change stream failed, retrying", signal.failure())))
+                .subscribe();
+
+        var flush = Flux.interval(tokenFlushInterval)
+                .concatMap(tick -> flushToken())
+                .subscribe();
+
+        subscriptions.add(tail);
+        subscriptions.add(flush);
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+        flushToken().block(Duration.ofSeconds(5));
+    }
+
+    private Flux<ChangeStreamEvent<MovieInfo>> listen(BsonDocument resumeToken) {
+        return Flux.defer(() -> {
+            var current = lastToken.get() != null ? BsonDocument.parse(lastToken.get()) : resumeToken;
+            return reactiveMongoTemplate.changeStream(MovieInfo.class)
+                    .watchCollection(MovieInfo.class)
+                    .withOptions(options -> {
+                        options.fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+                        if (current != null) {
+                            options.resumeAfter(current);
+                        }
+                    })
+                    .listen();
+        });
+    }
+
+    private void onChange(ChangeStreamEvent<MovieInfo> event) {
+        var type = changeType(event.getOperationType());
+        if (type != null) {
+            var movieInfo = event.getBody();
+            if (movieInfo == null) {
+                // deletes (and updates of an already deleted document) only carry the key
+                movieInfo = new MovieInfo();
+                movieInfo.setMovieInfoId(documentId(event));
+            }
+            if (movieInfo.getMovieInfoId() == null) {
+                // not a movie this service could have written or read, not worth stopping the stream for
+                log.warn("Skipping movieInfo {} of a document without a usable _id: {}", type,
+                        event.getRaw() != null ? event.getRaw().getDocumentKey() : null);
+            } else {
+                // writes from other nodes never went through our MovieInfoService, drop what we have cached
+                movieInfoCache.invalidate(movieInfo.getMovieInfoId());
+                movieInfoChangeStream.publish(type, movieInfo);
+            }
+        }
+        BsonValue resumeToken = event.getResumeToken();
+        if (resumeToken != null) {
+            lastToken.set(resumeToken.asDocument().toJson());
+        }
+    }
+
+    private Mono<StreamResumeToken> flushToken() {
+        var token = lastToken.get();
+        if (token == null || token.equals(flushedToken)) {
+            return Mono.empty();
+        }
+        return streamResumeTokenRepository.save(new StreamResumeToken(nodeId, token, Instant.now()))
+                .doOnNext(saved -> flushedToken = token)
+                .onErrorResume(ex -> {
+                    log.warn("Could not persist movieInfo change stream resume token", ex);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> forgetToken(Throwable failure) {
+        return Mono.defer(() -> {
+            log.error("MovieInfo change stream of node {} can not be resumed, restarting it from now", nodeId, failure);
+            lastToken.set(null);
+            flushedToken = null;
+            movieInfoChangeStream.reset("the MongoDB change stream could not be resumed");
+            return streamResumeTokenRepository.deleteById(nodeId);
+        }).onErrorResume(ex -> {
+            log.warn("Could not delete movieInfo change stream resume token", ex);
+            return Mono.empty();
+        });
+    }
+
+    // the server rejected the stream itself (history lost, invalid token), or the stored token is not even JSON
+    private static boolean isUnresumable(Throwable failure) {
+        for (var cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonParseException) {
+                return true;
+            }
+            if (cause instanceof MongoServerException) {
+                var serverException = (MongoServerException) cause;
+                if (serverException.hasErrorLabel("NonResumableChangeStreamError")) {
+                    return true;
+                }
+                return !serverException.hasErrorLabel("ResumableChangeStreamError")
+                        && !RESUMABLE_CODES.contains(serverException.getCode());
+            }
+        }
+        return false;
+    }
+
+    private static MovieInfoChangeType changeType(OperationType operationType) {
+        if (operationType == null) {
+            return null;
+        }
+        switch (operationType) {
+            case INSERT:
+                return MovieInfoChangeType.INSERT;
+            case UPDATE:
+            case REPLACE:
+                return MovieInfoChangeType.UPDATE;
+            case DELETE:
+                return MovieInfoChangeType.DELETE;
+            default:
+                return null;
+        }
+    }
+
+    // the String id reading the document would give, null when there is none
+    private String documentId(ChangeStreamEvent<MovieInfo> event) {
+        var raw = event.getRaw();
+        if (raw == null || raw.getDocumentKey() == null) {
+            return null;
+        }
+        var id = raw.getDocumentKey().get("_id");
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        try {
+            return reactiveMongoTemplate.getConverter().getConversionService().convert(BsonUtils.toJavaType(id), String.class);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.reactivespring.stream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exceptions.SlowConsumerException;
+import com.reactivespring.exceptions.StreamResetException;
+import com.reactivespring.repository.MovieInfoRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded replacement for the old replay().all() sink.
+ *
+ * Keeps the last {@code bufferSize} events in a ring buffer, numbered with a monotonically
+ * increasing sequence. Sequences are only meaningful to the instance that assigned them, so the
+ * event ids clients see are the sequence prefixed with a random id of this instance, see
+ * {@link #eventId(long)}. A subscriber can resume from any sequence that is still in the ring;
+ * if it asks for one that has been evicted (or one past the newest) we re-send the current
+ * catalogue from Mongo, mark its end with a RESYNC event and continue live from there. Every
+ * subscriber gets its own bounded queue so a slow reader never holds up the publisher or the
+ * other readers.
+ *
+ * With {@code movieinfo.stream.source=MONGO} events are fed by {@link MongoChangeStreamTailer}
+ * and the local write path notifications are ignored.
+ *
+ * A subscriber can ask for a {@link MovieInfoStreamFilter}. Subscribers are indexed by the
+ * filter's topic, so an event is only offered to the unfiltered subscribers and those of the
+ * topics it falls under. Deletes only carry the id and go to everyone.
+ *
+ * An update can take a movie out of a filter, so the name, year and cast last published (or sent
+ * from Mongo to a filtered subscriber) are kept per id, up to movieinfo.stream.previous-size
+ * movies. The update carries them as previous and goes to the topics of both versions; a
+ * subscriber whose filter matched only the old one gets a delete of the movie instead.
+ *
+ * Subscriber count, buffered events and dropped / disconnected totals are exported as
+ * {@code movieinfo.stream.*} meters.
+ */
+@Component
+@Slf4j
+public class MovieInfoChangeStream implements MeterBinder {
+
+    private final MovieInfoRepository movieInfoRepository;
+    private final StreamSource source;
+    private final BackpressurePolicy backpressurePolicy;
+    private final int subscriberBufferSize;
+
+    // changes on every start, told apart from other nodes' too
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    private final MovieInfoEvent[] ring;
+    private long headSequence = 0;
+    // the last sequence no subscriber can resume after, see reset()
+    private long resetSequence = 0;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // MovieInfoStreamFilter topic -> its subscribers, changed under the publish lock
+    private final Map<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+    // id -> name, year and cast as subscribers last saw them
+    private final Cache<String, MovieInfo> previousValues;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong disconnectedSubscribers = new AtomicLong();
+
+    public MovieInfoChangeStream(MovieInfoRepository movieInfoRepository,
+                                 @Value("${movieinfo.stream.buffer-size:1000}") int bufferSize,
+                                 @Value("${movieinfo.stream.subscriber-buffer-size:256}") int subscriberBufferSize,
+                                 @Value("${movieinfo.stream.backpressure-policy:DROP_OLDEST}") BackpressurePolicy backpressurePolicy,
+                                 @Value("${movieinfo.stream.source:LOCAL}") StreamSource source,
+                                 @Value("${movieinfo.stream.previous-size:100000}") long previousSize) {
+        if (bufferSize <= 0 || subscriberBufferSize <= 0) {
+            throw new IllegalArgumentException("movieinfo.stream buffer sizes must be positive");
+        }
+        this.movieInfoRepository = movieInfoRepository;
+        this.ring = new MovieInfoEvent[bufferSize];
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.backpressurePolicy = backpressurePolicy;
+        this.source = source;
+        this.previousValues = Caffeine.newBuilder().maximumSize(previousSize).build();
+    }
+
+    /**
+     * Called from the write path of this JVM. Ignored when the stream is fed by Mongo,
+     * the tailer will see the same write.
+     */
+    public void recordLocalChange(MovieInfoChangeType type, MovieInfo movieInfo) {
+        if (source == StreamSource.LOCAL) {
+            publish(type, movieInfo);
+        }
+    }
+
+    /**
+     * Batch variant of {@link #recordLocalChange}, takes the publish lock once for the whole batch.
+     */
+    public void recordLocalChanges(MovieInfoChangeType type, List<MovieInfo> movieInfos) {
+        if (source == StreamSource.LOCAL && !movieInfos.isEmpty()) {
+            synchronized (this) {
+                movieInfos.forEach(movieInfo -> publish(type, movieInfo));
+            }
+        }
+    }
+
+    public synchronized MovieInfoEvent publish(MovieInfoChangeType type, MovieInfo movieInfo) {
+        var previous = remember(type, movieInfo);
+        var event = new MovieInfoEvent(++headSequence, type, movieInfo, type == MovieInfoChangeType.UPDATE ? previous : null);
+        ring[slot(event.getSequence())] = event;
+        // nobody filters (or a delete): no need to work out the event's topics
+        if (type == MovieInfoChangeType.DELETE || topics.size() <= (topics.containsKey(MovieInfoStreamFilter.ALL_TOPIC) ? 1 : 0)) {
+            subscribers.forEach(subscriber -> subscriber.offer(event));
+            return event;
+        }
+        offer(MovieInfoStreamFilter.ALL_TOPIC, event, null);
+        var eventTopics = MovieInfoStreamFilter.topicsOf(movieInfo);
+        MovieInfoEvent left = null;
+        if (event.getPrevious() != null) {
+            eventTopics.addAll(MovieInfoStreamFilter.topicsOf(event.getPrevious()));
+            left = left(event);
+        }
+        var leftEvent = left;
+        eventTopics.forEach(topic -> offer(topic, event, leftEvent));
+        return event;
+    }
+
+    /**
+     * The id clients see for the event with this sequence, epoch.sequence.
+     */
+    public String eventId(long sequence) {
+        return epoch + "." + sequence;
+    }
+
+    /**
+     * Sequence to resume after for an id from {@link #eventId(long)}, null for none. Ids of another
+     * node or an earlier run (or no id at all) give -1, which {@link #subscribe(Long)} answers
+     * with the catalogue from Mongo like an evicted sequence.
+     */
+    public Long resumeSequence(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        var id = eventId.trim();
+        var dot = id.lastIndexOf('.');
+        if (dot > 0 && id.substring(0, dot).equals(epoch)) {
+            try {
+                return Long.parseLong(id.substring(dot + 1));
+            } catch (NumberFormatException ex) {
+                // falls through to the resync
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Events after {@code since}, followed by live events. A null {@code since} replays
+     * whatever is still in the ring buffer.
+     */
+    public Flux<MovieInfoEvent> subscribe(Long since) {
+        return subscribe(since, MovieInfoStreamFilter.ALL);
+    }
+
+    /**
+     * {@link #subscribe(Long)} with only the events that match {@code filter}, and all deletes.
+     */
+    public Flux<MovieInfoEvent> subscribe(Long since, MovieInfoStreamFilter filter) {
+        return Flux.defer(() -> {
+            var subscriber = new Subscriber(filter);
+            Flux<MovieInfoEvent> catchUp;
+            // registering and taking the snapshot under the publish lock means nothing is lost or duplicated in between
+            synchronized (this) {
+                register(subscriber);
+                var from = since == null ? oldestSequence() - 1 : since;
+                // ahead of the head: numbered before a restart, nothing in the ring relates to it
+                if (from < oldestSequence() - 1 || from > headSequence) {
+                    log.info("Requested sequence {} not in the ring buffer, holding {} to {}. Falling back to Mongo",
+                            from, oldestSequence(), headSequence);
+                    catchUp = resync(subscriber);
+                } else {
+                    catchUp = Flux.fromIterable(snapshotAfter(from));
+                }
+            }
+            if (!filter.isAll()) {
+                catchUp = catchUp.handle((event, sink) -> {
+                    var sent = subscriber.view(event, null);
+                    if (sent != null) {
+                        sink.next(sent);
+                    }
+                });
+            }
+            return Flux.concat(catchUp, subscriber.sink.asFlux())
+                    .doFinally(signalType -> unregister(subscriber));
+        });
+    }
+
+    /**
+     * The catalogue from Mongo, followed by a RESYNC event with the head sequence it was taken at.
+     * Only that one is resumable: a client reconnecting halfway through gets the whole catalogue
+     * again. Live events queue up meanwhile; if they overflow the subscriber's queue they are
+     * thrown away and the catalogue is read once more instead of dropping or disconnecting.
+     * Only ever called while holding the publish lock.
+     */
+    private Flux<MovieInfoEvent> resync(Subscriber subscriber) {
+        subscriber.resyncing = true;
+        subscriber.overflowed = false;
+        var resyncSequence = headSequence;
+        var movies = movieInfoRepository.findAll()
+                .map(movieInfo -> new MovieInfoEvent(0, MovieInfoChangeType.INSERT, movieInfo));
+        if (!subscriber.filter.isAll()) {
+            // a later update must know what this subscriber was sent, a newer published version wins
+            movies = movies.doOnNext(event -> previousValues.asMap()
+                    .putIfAbsent(event.getMovieInfo().getMovieInfoId(), routingValues(event.getMovieInfo())));
+        }
+        return Flux.concat(movies, Flux.defer(() -> {
+            synchronized (this) {
+                if (subscriber.overflowed) {
+                    log.info("Stream subscriber fell more than {} events behind while catching up, reading the catalogue again",
+                            subscriberBufferSize);
+                    return resync(subscriber);
+                }
+                subscriber.resyncing = false;
+                return Flux.just(new MovieInfoEvent(resyncSequence, MovieInfoChangeType.RESYNC, null));
+            }
+        }));
+    }
+
+    /**
+     * Called when events were lost upstream. Nothing up to now can be resumed from the ring any
+     * more, and every subscriber is cut with a StreamResetException so it comes back (an
+     * EventSource by itself) and gets the catalogue from Mongo.
+     */
+    public synchronized void reset(String reason) {
+        Arrays.fill(ring, null);
+        // the lost events, so a subscriber that saw the head resyncs as well
+        resetSequence = ++headSequence;
+        log.warn("Change stream reset at sequence {}, cutting {} subscribers: {}", headSequence, subscribers.size(), reason);
+        List.copyOf(subscribers).forEach(subscriber -> subscriber.cut(new StreamResetException(
+                "Change stream reset at sequence " + headSequence + ": " + reason)));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("movieinfo.stream.subscribers", this, MovieInfoChangeStream::getSubscriberCount)
+                .description("Connected change stream subscribers")
+                .register(registry);
+        Gauge.builder("movieinfo.stream.buffered", this, MovieInfoChangeStream::getBufferedCount)
+                .description("Events held in the replay ring buffer")
+                .register(registry);
+        Gauge.builder("movieinfo.stream.topics", topics, Map::size)
+                .description("Stream filter topics with subscribers")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.dropped", this, MovieInfoChangeStream::getDroppedEvents)
+                .description("Events dropped for slow subscribers")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.disconnected", this, MovieInfoChangeStream::getDisconnectedSubscribers)
+                .description("Subscribers disconnected for falling behind")
+                .register(registry);
+    }
+
+    public synchronized long getHeadSequence() {
+        return headSequence;
+    }
+
+    public synchronized int getBufferedCount() {
+        return (int) (headSequence - oldestSequence() + 1);
+    }
+
+    public StreamSource getSource() {
+        return source;
+    }
+
+    public int getSubscriberBufferSize() {
+        return subscriberBufferSize;
+    }
+
+    /**
+     * Whether every subscriber's queue has room for {@code events} more right now.
+     */
+    public boolean hasRoomFor(int events) {
+        return subscribers.stream().allMatch(subscriber -> subscriber.queue.remainingCapacity() >= events);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    public long getDisconnectedSubscribers() {
+        return disconnectedSubscribers.get();
+    }
+
+    private long oldestSequence() {
+        return Math.max(resetSequence + 1, Math.max(1, headSequence - ring.length + 1));
+    }
+
+    private List<MovieInfoEvent> snapshotAfter(long since) {
+        var events = new ArrayList<MovieInfoEvent>();
+        for (long sequence = since + 1; sequence <= headSequence; sequence++) {
+            events.add(ring[slot(sequence)]);
+        }
+        return events;
+    }
+
+    private int slot(long sequence) {
+        return (int) ((sequence - 1) % ring.length);
+    }
+
+    // only ever called while holding the publish lock
+    private void offer(String topic, MovieInfoEvent event, MovieInfoEvent left) {
+        var topicSubscribers = topics.get(topic);
+        if (topicSubscribers != null) {
+            topicSubscribers.forEach(subscriber -> {
+                var sent = subscriber.view(event, left);
+                if (sent != null) {
+                    subscriber.offer(sent);
+                }
+            });
+        }
+    }
+
+    // the values this movie had before, only ever called while holding the publish lock
+    private MovieInfo remember(MovieInfoChangeType type, MovieInfo movieInfo) {
+        var id = movieInfo.getMovieInfoId();
+        if (id == null) {
+            return null;
+        }
+        if (type == MovieInfoChangeType.DELETE) {
+            return previousValues.asMap().remove(id);
+        }
+        return previousValues.asMap().put(id, routingValues(movieInfo));
+    }
+
+    // what MovieInfoStreamFilter looks at
+    private static MovieInfo routingValues(MovieInfo movieInfo) {
+        var values = new MovieInfo();
+        values.setMovieInfoId(movieInfo.getMovieInfoId());
+        values.setName(movieInfo.getName());
+        values.setYear(movieInfo.getYear());
+        values.setCast(movieInfo.getCast());
+        return values;
+    }
+
+    // sent instead of an update to the subscribers whose filter no longer matches the movie
+    private static MovieInfoEvent left(MovieInfoEvent update) {
+        var deleted = new MovieInfo();
+        deleted.setMovieInfoId(update.getMovieInfo().getMovieInfoId());
+        return new MovieInfoEvent(update.getSequence(), MovieInfoChangeType.DELETE, deleted);
+    }
+
+    private synchronized void register(Subscriber subscriber) {
+        subscribers.add(subscriber);
+        topics.computeIfAbsent(subscriber.filter.topic(), topic -> ConcurrentHashMap.newKeySet()).add(subscriber);
+    }
+
+    private synchronized void unregister(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        topics.computeIfPresent(subscriber.filter.topic(), (topic, topicSubscribers) -> {
+            topicSubscribers.remove(subscriber);
+            return topicSubscribers.isEmpty() ? null : topicSubscribers;
+        });
+    }
+
+    private class Subscriber {
+        private final MovieInfoStreamFilter filter;
+        private final ArrayBlockingQueue<MovieInfoEvent> queue = new ArrayBlockingQueue<>(subscriberBufferSize);
+        private final Sinks.Many<MovieInfoEvent> sink = Sinks.many().unicast().onBackpressureBuffer(queue);
+        // both only changed while holding the publish lock
+        private boolean resyncing;
+        private boolean overflowed;
+
+        Subscriber(MovieInfoStreamFilter filter) {
+            this.filter = filter;
+        }
+
+        /**
+         * The event itself if it concerns this subscriber, a delete of its movie (left, or a new
+         * one when null) if an update took the movie out of the filter, null otherwise.
+         */
+        MovieInfoEvent view(MovieInfoEvent event, MovieInfoEvent left) {
+            if (filter.isAll() || event.getType() == MovieInfoChangeType.DELETE || event.getType() == MovieInfoChangeType.RESYNC
+                    || filter.matches(event.getMovieInfo())) {
+                return event;
+            }
+            if (event.getPrevious() != null && filter.matches(event.getPrevious())) {
+                return left != null ? left : left(event);
+            }
+            return null;
+        }
+
+        // only ever called while holding the publish lock
+        void offer(MovieInfoEvent event) {
+            // the next read of the catalogue covers it
+            if (overflowed) {
+                return;
+            }
+            if (sink.tryEmitNext(event) != Sinks.EmitResult.FAIL_OVERFLOW) {
+                return;
+            }
+            if (resyncing) {
+                overflowed = true;
+                queue.clear();
+                return;
+            }
+            if (backpressurePolicy == BackpressurePolicy.DROP_OLDEST) {
+                queue.poll();
+                droppedEvents.incrementAndGet();
+                sink.tryEmitNext(event);
+            } else {
+                disconnectedSubscribers.incrementAndGet();
+                cut(new SlowConsumerException("Stream subscriber fell more than "
+                        + subscriberBufferSize + " events behind at sequence " + event.getSequence()));
+            }
+        }
+
+        // only ever called while holding the publish lock
+        void cut(RuntimeException error) {
+            unregister(this);
+            // the error is only delivered once the queue is drained, and a stalled reader never drains it
+            queue.clear();
+            sink.tryEmitError(error);
+        }
+    }
+}
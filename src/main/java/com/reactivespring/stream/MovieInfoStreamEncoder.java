@@ -0,0 +1,103 @@
+package com.reactivespring.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.MovieInfoEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns change stream events into NDJSON lines and SSE frames once per event, however many
+ * connections receive it: every subscriber gets the same bytes, wrapped (not copied) in a
+ * DataBuffer of its own response.
+ *
+ * Frames are cached per event instance with weak keys, so they live exactly as long as the ring
+ * buffer or a subscriber queue holds the event. movieinfo.stream.encoded counts encodings,
+ * movieinfo.stream.frames the frames handed out.
+ */
+@Component
+public class MovieInfoStreamEncoder implements MeterBinder {
+
+    private final ObjectMapper objectMapper;
+    private final MovieInfoChangeStream movieInfoChangeStream;
+
+    // weak keys compare by identity
+    private final Cache<MovieInfoEvent, Frames> frames = Caffeine.newBuilder().weakKeys().build();
+
+    private final AtomicLong encoded = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    public MovieInfoStreamEncoder(ObjectMapper objectMapper, MovieInfoChangeStream movieInfoChangeStream) {
+        this.objectMapper = objectMapper;
+        this.movieInfoChangeStream = movieInfoChangeStream;
+    }
+
+    public DataBuffer ndjson(MovieInfoEvent event, DataBufferFactory bufferFactory) {
+        sent.incrementAndGet();
+        return bufferFactory.wrap(frames.get(event, this::encode).ndjson);
+    }
+
+    public DataBuffer serverSentEvent(MovieInfoEvent event, DataBufferFactory bufferFactory) {
+        sent.incrementAndGet();
+        return bufferFactory.wrap(frames.get(event, this::encode).serverSentEvent);
+    }
+
+    public long getEncoded() {
+        return encoded.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("movieinfo.stream.encoded", encoded, AtomicLong::get)
+                .description("Stream events encoded")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.frames", sent, AtomicLong::get)
+                .description("Encoded stream frames sent to subscribers")
+                .register(registry);
+    }
+
+    private Frames encode(MovieInfoEvent event) {
+        encoded.incrementAndGet();
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(event.getMovieInfo());
+        } catch (JsonProcessingException ex) {
+            throw new EncodingException("MovieInfo of stream event " + event.getSequence() + " could not be encoded", ex);
+        }
+        // the same framing ServerSentEventHttpMessageWriter produces, movies resent on a resync get no
+        // id so a reconnect halfway through starts over instead of resuming from the last one sent
+        var id = event.getSequence() == 0 ? "" : "id:" + movieInfoChangeStream.eventId(event.getSequence()) + "\n";
+        var header = (id + "event:" + event.getType().name().toLowerCase() + "\ndata:")
+                .getBytes(StandardCharsets.UTF_8);
+        return new Frames(concat(new byte[0], json, "\n"), concat(header, json, "\n\n"));
+    }
+
+    private static byte[] concat(byte[] prefix, byte[] body, String suffix) {
+        var end = suffix.getBytes(StandardCharsets.UTF_8);
+        var bytes = new byte[prefix.length + body.length + end.length];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        System.arraycopy(body, 0, bytes, prefix.length, body.length);
+        System.arraycopy(end, 0, bytes, prefix.length + body.length, end.length);
+        return bytes;
+    }
+
+    private static final class Frames {
+        private final byte[] ndjson;
+        private final byte[] serverSentEvent;
+
+        Frames(byte[] ndjson, byte[] serverSentEvent) {
+            this.ndjson = ndjson;
+            this.serverSentEvent = serverSentEvent;
+        }
+    }
+}
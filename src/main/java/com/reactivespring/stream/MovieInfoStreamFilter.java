@@ -0,0 +1,105 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.MovieInfo;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Which changes a stream subscriber wants: movies of one year, with one cast member and / or
+ * whose name starts with a prefix, all of the given ones. Cast and name are compared ignoring case.
+ *
+ * Each filter is registered under one topic, its most selective criterion, and
+ * {@link #topicsOf(MovieInfo)} lists the topics a movie falls under, so publishing only looks at
+ * the subscribers of those topics instead of all of them.
+ */
+public final class MovieInfoStreamFilter {
+
+    public static final MovieInfoStreamFilter ALL = new MovieInfoStreamFilter(null, null, null);
+
+    static final String ALL_TOPIC = "*";
+
+    // longer name prefixes are routed by their first MAX_NAME_TOPIC characters and checked in full
+    private static final int MAX_NAME_TOPIC = 32;
+
+    private final Integer year;
+    private final String cast;
+    private final String namePrefix;
+
+    private MovieInfoStreamFilter(Integer year, String cast, String namePrefix) {
+        this.year = year;
+        this.cast = cast;
+        this.namePrefix = namePrefix;
+    }
+
+    public static MovieInfoStreamFilter of(Integer year, String cast, String namePrefix) {
+        var normalizedCast = normalize(cast);
+        var normalizedPrefix = normalize(namePrefix);
+        if (year == null && normalizedCast == null && normalizedPrefix == null) {
+            return ALL;
+        }
+        return new MovieInfoStreamFilter(year, normalizedCast, normalizedPrefix);
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    public boolean matches(MovieInfo movieInfo) {
+        if (year != null && !year.equals(movieInfo.getYear())) {
+            return false;
+        }
+        if (cast != null && (movieInfo.getCast() == null
+                || movieInfo.getCast().stream().noneMatch(member -> cast.equals(normalize(member))))) {
+            return false;
+        }
+        if (namePrefix != null) {
+            var name = normalize(movieInfo.getName());
+            return name != null && name.startsWith(namePrefix);
+        }
+        return true;
+    }
+
+    String topic() {
+        if (cast != null) {
+            return "cast:" + cast;
+        }
+        if (namePrefix != null) {
+            return "name:" + namePrefix.substring(0, Math.min(namePrefix.length(), MAX_NAME_TOPIC));
+        }
+        if (year != null) {
+            return "year:" + year;
+        }
+        return ALL_TOPIC;
+    }
+
+    static Set<String> topicsOf(MovieInfo movieInfo) {
+        var topics = new LinkedHashSet<String>();
+        if (movieInfo.getYear() != null) {
+            topics.add("year:" + movieInfo.getYear());
+        }
+        if (movieInfo.getCast() != null) {
+            movieInfo.getCast().forEach(member -> {
+                var normalized = normalize(member);
+                if (normalized != null) {
+                    topics.add("cast:" + normalized);
+                }
+            });
+        }
+        var name = normalize(movieInfo.getName());
+        if (name != null) {
+            for (int length = 1; length <= Math.min(name.length(), MAX_NAME_TOPIC); length++) {
+                topics.add("name:" + name.substring(0, length));
+            }
+        }
+        return topics;
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
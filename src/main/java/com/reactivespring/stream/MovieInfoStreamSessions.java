@@ -0,0 +1,297 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.exceptions.StreamLimitExceededException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.core.publisher.Sinks;
+import reactor.netty.Connection;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the connections of /v1/movieinfos/stream and /stream/events bounded, so the memory a node
+ * spends on subscribers stays predictable however many connect.
+ *
+ * At most movieinfo.stream.sessions.max-connections streams are open per node and
+ * max-connections-per-client per remote address (behind a load balancer set
+ * server.forward-headers-strategy so that is the real client), over either limit the request gets
+ * 429. These are the only limits on the streams, AdmissionControlWebFilter does not count them.
+ * Every heartbeat-interval a stream that sent nothing gets a heartbeat, an empty NDJSON line or an
+ * SSE comment, so proxies keep it open and a dead peer surfaces as a write error.
+ *
+ * Netty only asks for more frames while the socket drains, so a stream without demand for
+ * stall-timeout belongs to a client that stopped reading or is gone: it is cut and its connection
+ * closed, which frees the subscriber queue and the Netty buffers. No stream lives longer than
+ * max-lifetime (0s for no limit), clients resume with since / Last-Event-ID.
+ *
+ * Open connections, distinct clients and the bytes waiting in the connections' outbound buffers
+ * are exported as movieinfo.stream.connections / clients / buffered-bytes. An outbound buffer may
+ * only be read on its event loop, so buffered-bytes is what each loop counted after the previous
+ * scrape.
+ */
+@Component
+@Slf4j
+public class MovieInfoStreamSessions implements MeterBinder {
+
+    public enum Heartbeat {
+        NDJSON("\n"),
+        SERVER_SENT_EVENT(":\n\n");
+
+        private final byte[] frame;
+
+        Heartbeat(String frame) {
+            this.frame = frame.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final int maxConnections;
+    private final int maxConnectionsPerClient;
+    private final Duration heartbeatInterval;
+    private final Duration stallTimeout;
+    private final Duration maxLifetime;
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    // remote address -> open streams, changed under the lock of this
+    private final Map<String, Integer> clients = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejectedGlobal = new AtomicLong();
+    private final AtomicLong rejectedClient = new AtomicLong();
+    private final AtomicLong evictedStalled = new AtomicLong();
+    private final AtomicLong evictedLifetime = new AtomicLong();
+    private final AtomicLong heartbeats = new AtomicLong();
+
+    private Disposable sweeper;
+
+    public MovieInfoStreamSessions(@Value("${movieinfo.stream.sessions.max-connections:500}") int maxConnections,
+                                   @Value("${movieinfo.stream.sessions.max-connections-per-client:10}") int maxConnectionsPerClient,
+                                   @Value("${movieinfo.stream.sessions.heartbeat-interval:15s}") Duration heartbeatInterval,
+                                   @Value("${movieinfo.stream.sessions.stall-timeout:60s}") Duration stallTimeout,
+                                   @Value("${movieinfo.stream.sessions.max-lifetime:1h}") Duration maxLifetime) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerClient = maxConnectionsPerClient;
+        this.heartbeatInterval = heartbeatInterval;
+        this.stallTimeout = stallTimeout;
+        this.maxLifetime = maxLifetime;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        sweeper = Flux.interval(heartbeatInterval)
+                .onBackpressureDrop()
+                .subscribe(tick -> sweep());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+
+    /**
+     * {@code frames} as one stream session: counted against the limits while subscribed, with
+     * heartbeats mixed in and cut when evicted. Over a limit it fails with
+     * {@link StreamLimitExceededException} before anything is written.
+     */
+    public Flux<DataBuffer> open(ServerWebExchange exchange, Heartbeat heartbeat, Flux<DataBuffer> frames) {
+        return Flux.defer(() -> {
+            var session = new Session(clientOf(exchange.getRequest()), channelOf(exchange.getResponse()));
+            if (!register(session)) {
+                return Flux.error(new StreamLimitExceededException("Too many open streams, retry later"));
+            }
+            var bufferFactory = exchange.getResponse().bufferFactory();
+            return Flux.merge(frames, session.heartbeats.asFlux().map(tick -> bufferFactory.wrap(heartbeat.frame)))
+                    .takeUntilOther(session.closed.asMono())
+                    .doOnRequest(session::requested)
+                    .doOnNext(frame -> session.sent())
+                    .doFinally(signalType -> unregister(session));
+        });
+    }
+
+    /**
+     * Evicts stalled and expired sessions and sends heartbeats to those that were quiet since
+     * the last sweep. Runs every heartbeat-interval.
+     */
+    public void sweep() {
+        var now = System.nanoTime();
+        sessions.forEach(session -> {
+            if (!maxLifetime.isZero() && now - session.openedAt >= maxLifetime.toNanos()) {
+                if (session.close(false)) {
+                    evictedLifetime.incrementAndGet();
+                }
+            } else if (session.isStalled(now, stallTimeout.toNanos())) {
+                if (session.close(true)) {
+                    log.debug("Disconnecting the stream of {}, nothing read for {}", session.client, stallTimeout);
+                    evictedStalled.incrementAndGet();
+                }
+            } else if (!session.sentSinceSweep.getAndSet(false) && session.heartbeats.tryEmitNext(now).isSuccess()) {
+                heartbeats.incrementAndGet();
+            }
+        });
+    }
+
+    public int getConnections() {
+        return sessions.size();
+    }
+
+    public long getBufferedBytes() {
+        return sessions.stream().mapToLong(Session::bufferedBytes).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("movieinfo.stream.connections", this, MovieInfoStreamSessions::getConnections)
+                .description("Open stream connections")
+                .register(registry);
+        Gauge.builder("movieinfo.stream.clients", clients, Map::size)
+                .description("Distinct clients with open stream connections")
+                .register(registry);
+        Gauge.builder("movieinfo.stream.buffered-bytes", this, MovieInfoStreamSessions::getBufferedBytes)
+                .description("Bytes waiting in the outbound buffers of stream connections")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.rejected", rejectedGlobal, AtomicLong::get)
+                .description("Stream connections refused over a limit")
+                .tag("limit", "global")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.rejected", rejectedClient, AtomicLong::get)
+                .description("Stream connections refused over a limit")
+                .tag("limit", "client")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.evicted", evictedStalled, AtomicLong::get)
+                .description("Stream connections cut by the server")
+                .tag("reason", "stalled")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.evicted", evictedLifetime, AtomicLong::get)
+                .description("Stream connections cut by the server")
+                .tag("reason", "lifetime")
+                .register(registry);
+        FunctionCounter.builder("movieinfo.stream.heartbeats", heartbeats, AtomicLong::get)
+                .description("Heartbeats sent on quiet streams")
+                .register(registry);
+    }
+
+    private synchronized boolean register(Session session) {
+        if (sessions.size() >= maxConnections) {
+            rejectedGlobal.incrementAndGet();
+            return false;
+        }
+        int open = clients.getOrDefault(session.client, 0);
+        if (open >= maxConnectionsPerClient) {
+            rejectedClient.incrementAndGet();
+            return false;
+        }
+        clients.put(session.client, open + 1);
+        sessions.add(session);
+        return true;
+    }
+
+    private synchronized void unregister(Session session) {
+        if (sessions.remove(session)) {
+            clients.computeIfPresent(session.client, (client, open) -> open > 1 ? open - 1 : null);
+        }
+    }
+
+    private static String clientOf(ServerHttpRequest request) {
+        var address = request.getRemoteAddress();
+        return address == null ? "unknown" : address.getHostString();
+    }
+
+    // null when not running on Reactor Netty (WebTestClient bound to a controller)
+    private static Channel channelOf(ServerHttpResponse response) {
+        try {
+            Object nativeResponse = ServerHttpResponseDecorator.getNativeResponse(response);
+            return nativeResponse instanceof Connection ? ((Connection) nativeResponse).channel() : null;
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            return null;
+        }
+    }
+
+    private static final class Session {
+        private final String client;
+        private final Channel channel;
+        private final long openedAt = System.nanoTime();
+
+        // requested minus sent, Long.MAX_VALUE once unbounded
+        private final AtomicLong outstanding = new AtomicLong();
+        // when outstanding last dropped to 0
+        private volatile long starvedSince = openedAt;
+        private final AtomicBoolean sentSinceSweep = new AtomicBoolean();
+        private final AtomicBoolean closing = new AtomicBoolean();
+        // written on the channel's event loop
+        private volatile long bufferedBytes;
+
+        private final Sinks.Many<Long> heartbeats = Sinks.many().multicast().directBestEffort();
+        private final Sinks.One<Boolean> closed = Sinks.one();
+
+        Session(String client, Channel channel) {
+            this.client = client;
+            this.channel = channel;
+        }
+
+        void requested(long n) {
+            outstanding.getAndUpdate(current -> Operators.addCap(current, n));
+        }
+
+        void sent() {
+            sentSinceSweep.set(true);
+            var left = outstanding.updateAndGet(current -> current == Long.MAX_VALUE ? current : Math.max(0, current - 1));
+            if (left == 0) {
+                starvedSince = System.nanoTime();
+            }
+        }
+
+        boolean isStalled(long now, long stallTimeoutNanos) {
+            return outstanding.get() == 0 && now - starvedSince >= stallTimeoutNanos;
+        }
+
+        // as of the previous call, a fresh count is taken on the event loop for the next one
+        long bufferedBytes() {
+            if (channel != null && channel.isActive()) {
+                channel.eventLoop().execute(this::countBufferedBytes);
+            }
+            return bufferedBytes;
+        }
+
+        private void countBufferedBytes() {
+            var outboundBuffer = channel.unsafe().outboundBuffer();
+            bufferedBytes = outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes();
+        }
+
+        // false if already closing
+        boolean close(boolean dropConnection) {
+            if (!closing.compareAndSet(false, true)) {
+                return false;
+            }
+            closed.tryEmitValue(true);
+            // a stalled peer would never read the end of the response
+            if (dropConnection && channel != null) {
+                channel.close();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.reactivespring.stream;
+
+/**
+ * Where the events on /v1/movieinfos/stream come from.
+ */
+public enum StreamSource {
+    // writes handled by this JVM only
+    LOCAL,
+    // MongoDB change stream, sees every write on every node (needs a replica set)
+    MONGO
+}
@@ -0,0 +1,42 @@
+package com.reactivespring.intg.config;
+
+import com.reactivespring.config.MovieInfoIndexInitializer;
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class MovieInfoIndexInitializerIntgTest {
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MovieInfoIndexInitializer movieInfoIndexInitializer;
+
+    @Test
+    void indexesAreCreatedAtStartup() {
+        StepVerifier.create(reactiveMongoTemplate.indexOps(MovieInfo.class).getIndexInfo()
+                        .map(IndexInfo::getName)
+                        .collectList())
+                .assertNext(names -> assertTrue(names.containsAll(List.of("year_id", "year_name_id", "name", "cast")), names.toString()))
+                .verifyComplete();
+    }
+
+    @Test
+    void noQueryIsACollectionScan() {
+        StepVerifier.create(movieInfoIndexInitializer.checkQueryPlans())
+                .assertNext(problems -> assertTrue(problems.isEmpty(), problems.toString()))
+                .verifyComplete();
+    }
+}
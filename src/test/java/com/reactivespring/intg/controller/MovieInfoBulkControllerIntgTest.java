@@ -0,0 +1,153 @@
+package com.reactivespring.intg.controller;
+
+import com.reactivespring.domain.BulkIngestResult;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.reactivespring.intg.controller.MoviesInfoControllerIntgTest.MOVIE_INFO_URL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "movieinfo.bulk.batch-size=2",
+        "movieinfo.bulk.publish-wait=5s",
+        "movieinfo.stream.subscriber-buffer-size=2",
+        "movieinfo.stream.backpressure-policy=DISCONNECT"})
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+public class MovieInfoBulkControllerIntgTest {
+
+    @Autowired
+    private MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MovieInfoChangeStream movieInfoChangeStream;
+
+    @BeforeEach
+    void setUp(){
+        movieInfoRepository.deleteAll()
+                .then(movieInfoRepository.save(
+                        new MovieInfo("xyz", "shiva mani", 2002, List.of("nag", "amala"), LocalDate.parse("2005-06-01"))))
+                .block();
+    }
+
+    @AfterEach
+    void tearDown(){
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void bulkAddMovieInfos_ndjson(){
+        var body = "{\"name\": \"okkadu\", \"year\": 2003, \"cast\": [\"mahesh\", \"boomika\"], \"release_date\": \"2003-08-08\"}\n"
+                + "{\"name\": null, \"year\": -2001, \"cast\": [\"pavan\"], \"release_date\": \"2002-11-10\"}\n"
+                + "{\"movieInfoId\": \"xyz\", \"name\": \"shiva mani\", \"year\": 2002, \"cast\": [\"nag\"], \"release_date\": \"2005-06-01\"}\n"
+                + "{\"name\": \"simhadhri\", \"year\": 2004, \"cast\": [\"ntr\"], \"release_date\": \"2004-12-01\"}\n";
+
+        var results = webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(BulkIngestResult.class)
+                .getResponseBody();
+
+        StepVerifier.create(results)
+                .assertNext(result -> {
+                    assertEquals(0, result.getIndex());
+                    assertTrue(result.isAccepted());
+                    assertNotNull(result.getMovieInfoId());
+                })
+                .assertNext(result -> {
+                    assertEquals(1, result.getIndex());
+                    assertFalse(result.isAccepted());
+                    assertEquals("MovieInfo.name must be present,MovieInfo.year must be Positive value", result.getError());
+                })
+                .assertNext(result -> {
+                    // duplicate id only fails its own element
+                    assertEquals(2, result.getIndex());
+                    assertFalse(result.isAccepted());
+                })
+                .assertNext(result -> {
+                    assertEquals(3, result.getIndex());
+                    assertTrue(result.isAccepted());
+                })
+                .verifyComplete();
+
+        StepVerifier.create(movieInfoRepository.findAll()).expectNextCount(3).verifyComplete();
+    }
+
+    @Test
+    void bulkAddMovieInfos_jsonArray(){
+        var movieInfos = List.of(
+                new MovieInfo(null, "okkadu", 2003, List.of("mahesh", "boomika"), LocalDate.parse("2003-08-08")),
+                new MovieInfo(null, "kushi", 2001, List.of("pavan", "boomika"), LocalDate.parse("2002-11-10")),
+                new MovieInfo(null, "simhadhri", 2004, List.of("mahesh", "boomika"), LocalDate.parse("2004-12-01")));
+
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(movieInfos)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBodyList(BulkIngestResult.class)
+                .hasSize(3);
+
+        StepVerifier.create(movieInfoRepository.findByYear(2003))
+                .assertNext(movieInfo -> assertEquals("okkadu", movieInfo.getName()))
+                .verifyComplete();
+    }
+
+    @Test
+    void bulkInsertsWaitForSlowStreamSubscribers() throws Exception {
+        var disconnected = movieInfoChangeStream.getDisconnectedSubscribers();
+        var received = movieInfoChangeStream.subscribe(movieInfoChangeStream.getHeadSequence())
+                .filter(event -> event.getType() == MovieInfoChangeType.INSERT)
+                // one event at a time, far slower than the batches are written
+                .concatMap(event -> Mono.just(event).delayElement(Duration.ofMillis(20)), 1)
+                .take(10)
+                .collectList()
+                .toFuture();
+        var body = IntStream.range(0, 10)
+                .mapToObj(i -> "{\"name\": \"movie " + i + "\", \"year\": 2003, \"cast\": [\"mahesh\"], \"release_date\": \"2003-08-08\"}\n")
+                .collect(Collectors.joining());
+
+        webTestClient.post()
+                .uri(MOVIE_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBodyList(BulkIngestResult.class)
+                .hasSize(10);
+
+        // the stream queue holds 2 events, each batch of 2 went out one event at a time as it made room
+        assertEquals(10, received.get(30, TimeUnit.SECONDS).size());
+        assertEquals(disconnected, movieInfoChangeStream.getDisconnectedSubscribers());
+    }
+}
@@ -1,6 +1,9 @@
 package com.reactivespring.intg.controller;
 
+import com.reactivespring.cache.MovieInfoCache;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoPage;
+import com.reactivespring.logging.AccessLogWebFilter;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,6 +11,9 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -16,14 +22,18 @@ import reactor.test.StepVerifier;
 
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// a single node, the LOCAL stream source sees every write
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "movieinfo.watermarks.enabled=true")
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient //(timeout = "36000")
 public class MoviesInfoControllerIntgTest {
@@ -31,6 +41,9 @@ public class MoviesInfoControllerIntgTest {
     @Autowired
     private MovieInfoRepository movieInfoRepository;
 
+    @Autowired
+    private MovieInfoCache movieInfoCache;
+
     @Autowired
     private WebTestClient webTestClient;
 
@@ -53,6 +66,8 @@ public class MoviesInfoControllerIntgTest {
                 .deleteAll()
                 .thenMany(movieInfoRepository.saveAll(movieInfos))
                 .blockLast();
+        // the fixtures are written straight to the repository, behind the cache's back
+        movieInfoCache.invalidateAll();
 
         webTestClient = webTestClient.mutate()
                 .responseTimeout(Duration.ofMillis(30000))
@@ -91,6 +106,61 @@ public class MoviesInfoControllerIntgTest {
                 .expectBody().jsonPath("$.name").isEqualTo("shiva mani");
     }
 
+    @Test
+    void getMovieInfoById_notModified(){
+        var id = "xyz";
+        var eTag = webTestClient.get().uri(MOVIE_INFO_URL+"/{id}", id).exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().exists(HttpHeaders.LAST_MODIFIED)
+                .expectHeader().exists(HttpHeaders.CACHE_CONTROL)
+                .expectHeader().valueEquals(HttpHeaders.VARY, "Accept, Accept-Encoding")
+                .expectBody(MovieInfo.class)
+                .returnResult()
+                .getResponseHeaders().getETag();
+        assertNotNull(eTag);
+
+        webTestClient.get().uri(MOVIE_INFO_URL+"/{id}", id)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void getAllMovieInfoByYear_notModifiedUntilTheYearChanges(){
+        var uri = UriComponentsBuilder.fromUriString(MOVIE_INFO_URL).queryParam("year", 2003).buildAndExpand().toUri();
+        var eTag = webTestClient.get().uri(uri).exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .returnResult()
+                .getResponseHeaders().getETag();
+        assertNotNull(eTag);
+
+        webTestClient.get().uri(uri).header(HttpHeaders.IF_NONE_MATCH, eTag).exchange()
+                .expectStatus().isNotModified();
+
+        var movieInfo = new MovieInfo(null, "Batman Begins1", 2003, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        webTestClient.post().uri(MOVIE_INFO_URL).bodyValue(movieInfo).exchange()
+                .expectStatus().isCreated();
+
+        webTestClient.get().uri(uri).header(HttpHeaders.IF_NONE_MATCH, eTag).exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getMovieInfoById_traced(){
+        var id = "xyz";
+        webTestClient.get().uri(MOVIE_INFO_URL+"/{id}", id)
+                .header(AccessLogWebFilter.REQUEST_ID_HEADER, "trace-me")
+                .header(AccessLogWebFilter.TRACE_HEADER, "true")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().valueEquals(AccessLogWebFilter.REQUEST_ID_HEADER, "trace-me")
+                .expectBody().jsonPath("$.name").isEqualTo("shiva mani");
+    }
+
     @Test
     void updateMovieInfo(){
         var id = "xyz";
@@ -107,6 +177,61 @@ public class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void updateMovieInfo_ifMatch(){
+        var id = "xyz";
+        var current = movieInfoRepository.findById(id).block();
+        assert current != null;
+        var eTag = "W/\"" + current.getVersion() + "\"";
+        var updatedMovieInfo =
+                new MovieInfo(null, "shiva mani", 2006, List.of("nag", "amala", "tabu"), LocalDate.parse("2006-07-18"));
+
+        webTestClient.put().uri(MOVIE_INFO_URL+"/{id}", id)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .bodyValue(updatedMovieInfo)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"" + (current.getVersion() + 1) + "\"");
+
+        // the same precondition again is now stale
+        webTestClient.put().uri(MOVIE_INFO_URL+"/{id}", id)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .bodyValue(updatedMovieInfo)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    void updateMovieInfo_notFound(){
+        var updatedMovieInfo =
+                new MovieInfo(null, "shiva mani", 2006, List.of("nag", "amala", "tabu"), LocalDate.parse("2006-07-18"));
+
+        webTestClient.put().uri(MOVIE_INFO_URL+"/{id}", "def")
+                .bodyValue(updatedMovieInfo)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void patchMovieInfo(){
+        var id = "xyz";
+        var changes = new MovieInfo();
+        changes.setYear(2006);
+
+        webTestClient.patch().uri(MOVIE_INFO_URL+"/{id}", id)
+                .bodyValue(changes)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    var patched = movieInfoEntityExchangeResult.getResponseBody();
+                    assert patched != null;
+                    assertEquals(2006, patched.getYear());
+                    assertEquals("shiva mani", patched.getName());
+                    assertEquals(List.of("nag", "amala"), patched.getCast());
+                });
+    }
+
     @Test
     void deleteMovieInfo(){
         var id = "xyz";
@@ -133,6 +258,134 @@ public class MoviesInfoControllerIntgTest {
                .hasSize(1);
     }
 
+    @Test
+    void getMovieInfoPages(){
+        var seen = new ArrayList<String>();
+        String cursor = null;
+        // size 1 walks across the string id "xyz" into the generated ObjectIds
+        do {
+            var uri = UriComponentsBuilder.fromUriString(MOVIE_INFO_URL + "/page")
+                    .queryParam("size", 1)
+                    .queryParamIfPresent("cursor", Optional.ofNullable(cursor))
+                    .buildAndExpand().toUri();
+            var page = webTestClient.get().uri(uri).exchange()
+                    .expectStatus().is2xxSuccessful()
+                    .expectBody(MovieInfoPage.class)
+                    .returnResult()
+                    .getResponseBody();
+            assertNotNull(page);
+            page.getContent().forEach(movieInfo -> seen.add(movieInfo.getMovieInfoId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(4, seen.size());
+        assertEquals(4, new HashSet<>(seen).size());
+    }
+
+    @Test
+    void getMovieInfoPageByYear(){
+        webTestClient.get().uri(MOVIE_INFO_URL + "/page?year=2003&size=10").exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(1)
+                .jsonPath("$.nextCursor").doesNotExist();
+    }
+
+    @Test
+    void getMovieInfoPage_invalidCursor(){
+        webTestClient.get().uri(MOVIE_INFO_URL + "/page?cursor=not-a-cursor").exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getAllMovieInfos_ndjson(){
+        var movieInfoFlux = webTestClient.get().uri(MOVIE_INFO_URL)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(MovieInfo.class)
+                .getResponseBody();
+
+        StepVerifier.create(movieInfoFlux).expectNextCount(4).verifyComplete();
+    }
+
+    @Test
+    void getAllMovieInfos_gzip(){
+        var cast = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            cast.add("cast member " + i);
+        }
+        var longCast = movieInfoRepository.save(new MovieInfo(null, "long cast", 2010, cast, LocalDate.parse("2010-01-01"))).block();
+        assert longCast != null;
+
+        // a single movie has a known length, well above min-response-size here
+        webTestClient.get().uri(MOVIE_INFO_URL+"/{id}", longCast.getMovieInfoId())
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectHeader().valueEquals(HttpHeaders.VARY, "Accept, Accept-Encoding");
+
+        // below min-response-size
+        webTestClient.get().uri(MOVIE_INFO_URL+"/{id}", "xyz")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING);
+    }
+
+    @Test
+    void getAllMovieInfos_smile(){
+        var smile = MediaType.parseMediaType("application/x-jackson-smile");
+        webTestClient.get().uri(MOVIE_INFO_URL)
+                .accept(smile)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().contentTypeCompatibleWith(smile)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(4);
+    }
+
+    @Test
+    void getMovieInfoSummaries(){
+        webTestClient.get().uri(MOVIE_INFO_URL + "/summaries?year=2002").exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].movieInfoId").isEqualTo("xyz")
+                .jsonPath("$[0].name").isEqualTo("shiva mani")
+                .jsonPath("$[0].cast").doesNotExist();
+    }
+
+    @Test
+    void getMovieInfosByIds(){
+        var okkaduId = movieInfoRepository.findByName("okkadu").block().getMovieInfoId();
+
+        webTestClient.post().uri(MOVIE_INFO_URL + "/batch")
+                .bodyValue(List.of("xyz", "unknown", okkaduId, "xyz"))
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.content.length()").isEqualTo(2)
+                .jsonPath("$.content[0].name").isEqualTo("shiva mani")
+                .jsonPath("$.content[1].name").isEqualTo("okkadu")
+                .jsonPath("$.missing.length()").isEqualTo(1)
+                .jsonPath("$.missing[0]").isEqualTo("unknown");
+    }
+
+    @Test
+    void getMovieInfosByIds_tooMany(){
+        var ids = new ArrayList<String>();
+        for (int i = 0; i <= 1000; i++) {
+            ids.add("id" + i);
+        }
+
+        webTestClient.post().uri(MOVIE_INFO_URL + "/batch")
+                .bodyValue(ids)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     void getMovieInfoByName(){
         var name = "okkadu";
@@ -0,0 +1,81 @@
+package com.reactivespring.intg.faststart;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.faststart.MovieInfoBeans;
+import com.reactivespring.faststart.MoviesInfoFastStartApplication;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static com.reactivespring.intg.controller.MoviesInfoControllerIntgTest.MOVIE_INFO_URL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = MoviesInfoFastStartApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ContextConfiguration(initializers = MovieInfoBeans.class)
+@ActiveProfiles({"test", "faststart"})
+@AutoConfigureWebTestClient
+public class MoviesInfoFastStartApplicationIntgTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @AfterEach
+    void tearDown(){
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void onlyEagerBeansAreCreatedAtStartup() {
+        var beanFactory = context.getBeanFactory();
+        assertTrue(beanFactory.containsSingleton("movieInfoController"));
+        assertTrue(beanFactory.containsSingleton("movieInfoIndexInitializer"));
+        assertFalse(beanFactory.containsSingleton("movieInfoBulkController"));
+        assertFalse(beanFactory.containsSingleton("fluxAndMonoController"));
+    }
+
+    @Test
+    void addAndGetMovieInfo() {
+        var movieInfo = new MovieInfo(null, "okkadu", 2003, List.of("mahesh", "boomika"), LocalDate.parse("2003-08-08"));
+
+        var saved = webTestClient.post()
+                .uri(MOVIE_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(MovieInfo.class)
+                .returnResult()
+                .getResponseBody();
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", saved.getMovieInfoId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(MovieInfo.class)
+                .value(found -> assertEquals("okkadu", found.getName()));
+
+        // the custom repository fragment is wired into the hand built repository
+        StepVerifier.create(movieInfoRepository.updateFields(saved.getMovieInfoId(), null, Map.of("name", "okkadu 2")))
+                .assertNext(updated -> assertEquals("okkadu 2", updated.getName()))
+                .verifyComplete();
+    }
+}
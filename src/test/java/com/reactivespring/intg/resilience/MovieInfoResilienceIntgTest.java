@@ -0,0 +1,183 @@
+package com.reactivespring.intg.resilience;
+
+import com.mongodb.ServerAddress;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.resilience.CircuitBreaker;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.tcp.TcpClient;
+import reactor.netty.tcp.TcpServer;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.reactivespring.intg.controller.MoviesInfoControllerIntgTest.MOVIE_INFO_URL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the service against the embedded Mongo through {@link MongoLatencyProxy}, a TCP proxy
+ * that holds back Mongo's replies for as long as the test asks.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "movieinfo.resilience.timeouts[findById]=200ms",
+        "movieinfo.resilience.timeouts[findAllById]=200ms",
+        "movieinfo.resilience.retry.max-retries=1",
+        "movieinfo.resilience.retry.min-backoff=10ms",
+        "movieinfo.resilience.circuit-breaker.sliding-window-size=4",
+        "movieinfo.resilience.circuit-breaker.minimum-calls=4",
+        "movieinfo.resilience.circuit-breaker.open-duration=1m",
+        "movieinfo.cache.ttl=100ms"})
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+// the circuit breaker state must not leak into the next test
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class MovieInfoResilienceIntgTest {
+
+    @Autowired
+    private MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    private MovieInfoStoreResilience movieInfoStoreResilience;
+
+    @Autowired
+    private MongoLatencyProxy mongoLatencyProxy;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        mongoLatencyProxy.setLatency(Duration.ZERO);
+        movieInfoRepository.deleteAll()
+                .then(movieInfoRepository.save(
+                        new MovieInfo("abc", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))))
+                .block();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoLatencyProxy.setLatency(Duration.ZERO);
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void slowMongoIsCutOffAtTheDeadline() {
+        mongoLatencyProxy.setLatency(Duration.ofSeconds(3));
+        var started = System.nanoTime();
+
+        webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", "abc")
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+
+        // two attempts of 200ms plus the backoff, nowhere near the injected 3s
+        var elapsed = Duration.ofNanos(System.nanoTime() - started);
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(2)) < 0, "took " + elapsed);
+    }
+
+    @Test
+    void openCircuitServesTheStaleCopy() throws InterruptedException {
+        getMovieInfo("abc").expectStatus().isOk();
+        // past the cache ttl, only the stale copy is left
+        Thread.sleep(200);
+        mongoLatencyProxy.setLatency(Duration.ofSeconds(3));
+
+        // each request times out twice, the fourth failure opens the circuit
+        for (int i = 0; i < 2; i++) {
+            getMovieInfo("abc")
+                    .expectStatus().isOk()
+                    .expectBody(MovieInfo.class)
+                    .value(movieInfo -> assertEquals("Dark Knight Rises", movieInfo.getName()));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, movieInfoStoreResilience.getCircuitBreaker().getState());
+
+        var started = System.nanoTime();
+        getMovieInfo("abc").expectStatus().isOk();
+        var elapsed = Duration.ofNanos(System.nanoTime() - started);
+        assertTrue(elapsed.compareTo(Duration.ofMillis(200)) < 0, "took " + elapsed);
+
+        // nothing stale to serve
+        getMovieInfo("xyz").expectStatus().isEqualTo(503);
+    }
+
+    private WebTestClient.ResponseSpec getMovieInfo(String id) {
+        return webTestClient.get()
+                .uri(MOVIE_INFO_URL + "/{id}", id)
+                .exchange();
+    }
+
+    @TestConfiguration
+    static class LatencyInjection {
+
+        @Bean(destroyMethod = "dispose")
+        MongoLatencyProxy mongoLatencyProxy() {
+            return new MongoLatencyProxy();
+        }
+
+        // runs after Spring Boot's own customizer, which points the client at the embedded Mongo
+        @Bean
+        MongoClientSettingsBuilderCustomizer throughLatencyProxy(MongoLatencyProxy mongoLatencyProxy, Environment environment) {
+            return builder -> {
+                var mongoPort = environment.getRequiredProperty("local.mongo.port", Integer.class);
+                var proxyPort = mongoLatencyProxy.start(mongoPort);
+                builder.applyToClusterSettings(settings -> settings.hosts(List.of(new ServerAddress("localhost", proxyPort))));
+            };
+        }
+    }
+
+    static class MongoLatencyProxy {
+
+        private volatile Duration latency = Duration.ZERO;
+        private DisposableServer server;
+
+        void setLatency(Duration latency) {
+            this.latency = latency;
+        }
+
+        synchronized int start(int targetPort) {
+            if (server == null) {
+                server = TcpServer.create()
+                        .host("localhost")
+                        .port(0)
+                        .handle((in, out) -> TcpClient.newConnection()
+                                .host("localhost")
+                                .port(targetPort)
+                                .connect()
+                                .flatMap(mongo -> Mono.when(
+                                                mongo.outbound().send(in.receive().retain()),
+                                                out.send(mongo.inbound().receive().retain()
+                                                        .concatMap(reply -> latency.isZero()
+                                                                ? Mono.just(reply)
+                                                                : Mono.delay(latency).thenReturn(reply))))
+                                        .doFinally(signalType -> mongo.dispose())))
+                        .bindNow();
+            }
+            return server.port();
+        }
+
+        synchronized void dispose() {
+            if (server != null) {
+                server.disposeNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.reactivespring.intg.stream;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.StreamResumeToken;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.repository.StreamResumeTokenRepository;
+import com.reactivespring.stream.BackpressurePolicy;
+import com.reactivespring.stream.MongoChangeStreamTailer;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.StreamSource;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@SpringBootTest
+@ActiveProfiles({"test", "replset"})
+public class MongoChangeStreamTailerIntgTest {
+
+    @Autowired
+    private MongoClient mongoClient;
+
+    @Autowired
+    private MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    private StreamResumeTokenRepository streamResumeTokenRepository;
+
+    @Autowired
+    private MovieInfoChangeStream movieInfoChangeStream;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private MovieInfoCache movieInfoCache;
+
+    @BeforeEach
+    void setUp() {
+        // flapdoodle starts mongod with --replSet but nobody initiates it
+        var admin = mongoClient.getDatabase("admin");
+        Mono.from(admin.runCommand(new Document("replSetInitiate", new Document())))
+                .onErrorResume(ex -> Mono.empty())
+                .block();
+        Mono.from(admin.runCommand(new Document("isMaster", 1)))
+                .filter(result -> result.getBoolean("ismaster", false))
+                .repeatWhenEmpty(10, repeat -> repeat.delayElements(Duration.ofMillis(500)))
+                .block();
+        movieInfoRepository.deleteAll()
+                .retryWhen(Retry.fixedDelay(10, Duration.ofMillis(500)))
+                .block();
+
+        // the tailer opens its cursor asynchronously (and retries until the replica set is up),
+        // keep writing a probe document until it shows up on the stream
+        var probe = new MovieInfo("probe", "probe", 2000, List.of("probe"), LocalDate.parse("2000-01-01"));
+        var writer = Flux.interval(Duration.ofMillis(500))
+                .concatMap(tick -> movieInfoRepository.save(probe).onErrorResume(ex -> Mono.empty()))
+                .subscribe();
+        try {
+            movieInfoChangeStream.subscribe(movieInfoChangeStream.getHeadSequence())
+                    .next()
+                    .block(Duration.ofSeconds(60));
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void insertUpdateAndDeleteAreStreamed() {
+        var events = movieInfoChangeStream.subscribe(movieInfoChangeStream.getHeadSequence())
+                .filter(event -> "cs1".equals(event.getMovieInfo().getMovieInfoId()));
+        var movieInfo = new MovieInfo("cs1", "okkadu", 2003, List.of("mahesh", "boomika"), LocalDate.parse("2003-08-08"));
+
+        StepVerifier.create(events)
+                .then(() -> movieInfoRepository.save(movieInfo)
+                        .flatMap(saved -> {
+                            saved.setYear(2004);
+                            return movieInfoRepository.save(saved);
+                        })
+                        .then(movieInfoRepository.deleteById("cs1"))
+                        .subscribe())
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChangeType.INSERT, event.getType());
+                    assertEquals("okkadu", event.getMovieInfo().getName());
+                })
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChangeType.UPDATE, event.getType());
+                    assertEquals(2004, event.getMovieInfo().getYear());
+                })
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChangeType.DELETE, event.getType());
+                    assertEquals("cs1", event.getMovieInfo().getMovieInfoId());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void resumeTokenIsPersisted() {
+        var movieInfo = new MovieInfo(null, "kushi", 2001, List.of("pavan", "boomika"), LocalDate.parse("2002-11-10"));
+        movieInfoRepository.save(movieInfo).block();
+
+        StepVerifier.create(streamResumeTokenRepository.findById("test-node")
+                        .repeatWhenEmpty(20, repeat -> repeat.delayElements(Duration.ofMillis(250))))
+                .assertNext(token -> assertEquals("test-node", token.getNodeId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void unusableResumeTokenIsDroppedAndTheStreamStartsOverFromNow() {
+        // a node of its own, with a token the server can't resume from
+        var unusable = "{\"_data\": \"00\"}";
+        streamResumeTokenRepository.save(new StreamResumeToken("lost-node", unusable, Instant.now())).block();
+        var changeStream = new MovieInfoChangeStream(movieInfoRepository, 100, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.MONGO, 1000);
+        var tailer = new MongoChangeStreamTailer(reactiveMongoTemplate, streamResumeTokenRepository, changeStream,
+                movieInfoCache, "lost-node", Duration.ofMillis(100));
+        tailer.start();
+
+        var probe = new MovieInfo("lost-probe", "probe", 2000, List.of("probe"), LocalDate.parse("2000-01-01"));
+        var writer = Flux.interval(Duration.ofMillis(500))
+                .concatMap(tick -> movieInfoRepository.save(probe).onErrorResume(ex -> Mono.empty()))
+                .subscribe();
+        try {
+            // the failed resume resets the change stream and cuts whoever was subscribed
+            StepVerifier.create(changeStream.subscribe(null)
+                            .retry()
+                            .filter(event -> event.getType() != MovieInfoChangeType.RESYNC)
+                            .next())
+                    .assertNext(event -> assertEquals("lost-probe", event.getMovieInfo().getMovieInfoId()))
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(60));
+            StepVerifier.create(streamResumeTokenRepository.findById("lost-node")
+                            .filter(token -> !unusable.equals(token.getToken()))
+                            .repeatWhenEmpty(20, repeat -> repeat.delayElements(Duration.ofMillis(250))))
+                    .assertNext(token -> assertNotEquals(unusable, token.getToken()))
+                    .verifyComplete();
+        } finally {
+            writer.dispose();
+            tailer.stop();
+            streamResumeTokenRepository.deleteById("lost-node").block();
+        }
+    }
+}
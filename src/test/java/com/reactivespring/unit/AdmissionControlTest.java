@@ -0,0 +1,124 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.admission.AdmissionControlWebFilter;
+import com.reactivespring.admission.AdmissionControlWebFilter.Budget;
+import com.reactivespring.admission.ConcurrencyLimit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AdmissionControlTest {
+
+    private final ConcurrencyLimit limit = new ConcurrencyLimit(4, 2, 6, 100, TimeUnit.MILLISECONDS, 0.5);
+
+    private final AdmissionControlWebFilter filter = new AdmissionControlWebFilter(true,
+            2, 10, Duration.ofMillis(250), 2, 10, Duration.ofMillis(500), 1, 0.5, 1, 1, Duration.ofSeconds(1));
+
+    @Test
+    void rejectsOverTheLimit() {
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, limit.tryAcquire());
+        }
+        assertEquals(-1, limit.tryAcquire());
+        assertEquals(1, limit.getRejected());
+
+        limit.release();
+        assertEquals(4, limit.tryAcquire());
+    }
+
+    @Test
+    void increasesWhileBusyAndBacksOffOnSlowOrFailedRequests() {
+        var inFlight = limit.tryAcquire();
+        // one of four slots used, not busy enough to grow
+        limit.release(inFlight, TimeUnit.MILLISECONDS.toNanos(5), false);
+        assertEquals(4, limit.getLimit());
+
+        limit.release(limit.tryAcquire() + 1, TimeUnit.MILLISECONDS.toNanos(5), false);
+        assertEquals(5, limit.getLimit());
+        limit.release(limit.tryAcquire() + 2, TimeUnit.MILLISECONDS.toNanos(5), false);
+        limit.release(limit.tryAcquire() + 2, TimeUnit.MILLISECONDS.toNanos(5), false);
+        assertEquals(6, limit.getLimit());
+
+        limit.release(limit.tryAcquire(), TimeUnit.MILLISECONDS.toNanos(500), false);
+        assertEquals(3, limit.getLimit());
+        limit.release(limit.tryAcquire(), TimeUnit.MILLISECONDS.toNanos(5), true);
+        assertEquals(2, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void filterShedsReadsWith503AndStreamsWith429() {
+        var pending = Sinks.<Void>empty();
+        for (int i = 0; i < 2; i++) {
+            filter.filter(exchange(MockServerHttpRequest.get("/v1/movieinfos/xyz")), exchange -> pending.asMono()).subscribe();
+        }
+        var rejected = exchange(MockServerHttpRequest.get("/v1/movieinfos/xyz"));
+        StepVerifier.create(filter.filter(rejected, exchange -> Mono.empty())).verifyComplete();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getResponse().getStatusCode());
+        assertEquals("1", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        // writes have their own budget
+        var write = exchange(MockServerHttpRequest.post("/v1/movieinfos"));
+        StepVerifier.create(filter.filter(write, exchange -> Mono.empty())).verifyComplete();
+        assertNull(write.getResponse().getStatusCode());
+
+        // a batch lookup is a read even though it is a POST
+        var batch = exchange(MockServerHttpRequest.post("/v1/movieinfos/batch"));
+        StepVerifier.create(filter.filter(batch, exchange -> Mono.empty())).verifyComplete();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, batch.getResponse().getStatusCode());
+
+        // full lists neither take read slots nor count as slow reads
+        filter.filter(exchange(MockServerHttpRequest.get("/v1/movieinfos")), exchange -> pending.asMono()).subscribe();
+        var list = exchange(MockServerHttpRequest.get("/v1/movieinfos/summaries"));
+        StepVerifier.create(filter.filter(list, exchange -> Mono.empty())).verifyComplete();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, list.getResponse().getStatusCode());
+        assertEquals(2, filter.getLimit(Budget.READ).getInFlight());
+
+        filter.filter(exchange(MockServerHttpRequest.post("/v1/movieinfos/bulk")), exchange -> pending.asMono()).subscribe();
+        var stream = exchange(MockServerHttpRequest.get("/v1/movieinfos").accept(MediaType.APPLICATION_NDJSON));
+        StepVerifier.create(filter.filter(stream, exchange -> Mono.empty())).verifyComplete();
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, stream.getResponse().getStatusCode());
+
+        // change stream subscriptions are MovieInfoStreamSessions' to limit
+        var subscription = exchange(MockServerHttpRequest.get("/v1/movieinfos/stream/events"));
+        filter.filter(subscription, exchange -> pending.asMono()).subscribe();
+        assertNull(subscription.getResponse().getStatusCode());
+        assertEquals(1, filter.getLimit(Budget.STREAM).getInFlight());
+
+        pending.tryEmitEmpty();
+        assertEquals(0, filter.getLimit(Budget.READ).getInFlight());
+        assertEquals(0, filter.getLimit(Budget.LIST).getInFlight());
+        assertEquals(0, filter.getLimit(Budget.STREAM).getInFlight());
+    }
+
+    @Test
+    void exposesLimitsAndRejections() {
+        var registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        var pending = Sinks.<Void>empty();
+        filter.filter(exchange(MockServerHttpRequest.post("/v1/movieinfos/bulk")), exchange -> pending.asMono()).subscribe();
+        filter.filter(exchange(MockServerHttpRequest.post("/v1/movieinfos/bulk")), exchange -> Mono.empty()).subscribe();
+
+        assertEquals(2.0, registry.get("movieinfo.admission.limit").tag("budget", "read").gauge().value());
+        assertEquals(1.0, registry.get("movieinfo.admission.inflight").tag("budget", "stream").gauge().value());
+        assertEquals(1.0, registry.get("movieinfo.admission.rejected").tag("budget", "stream").functionCounter().count());
+        pending.tryEmitEmpty();
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request);
+    }
+}
@@ -0,0 +1,83 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.aggregate.MovieInfoAggregates;
+import com.reactivespring.domain.CastAppearances;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoYearCount;
+import com.reactivespring.exceptions.AggregatesNotReadyException;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoAggregatesTest {
+
+    private final MovieInfoRepository movieInfoRepository = mock(MovieInfoRepository.class);
+
+    private MovieInfoAggregates movieInfoAggregates;
+
+    @BeforeEach
+    void setUp() {
+        when(movieInfoRepository.findAll()).thenReturn(Flux.just(
+                new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("2", "The Prestige", 2006, List.of("Christian Bale", "Hugh Jackman"), LocalDate.parse("2006-10-20")),
+                new MovieInfo("3", "Sin City", 2005, List.of("Bruce Willis"), null)));
+        movieInfoAggregates = new MovieInfoAggregates(movieInfoRepository, mock(MovieInfoChangeStream.class), true, 2, Duration.ofHours(1));
+    }
+
+    @Test
+    void notReadyBeforeTheFirstRebuild() {
+        assertThrows(AggregatesNotReadyException.class, () -> movieInfoAggregates.forYear(2005));
+    }
+
+    @Test
+    void rebuildCountsEveryYear() {
+        movieInfoAggregates.rebuild().block();
+
+        assertEquals(List.of(new MovieInfoYearCount(2005, 2), new MovieInfoYearCount(2006, 1)), movieInfoAggregates.counts());
+
+        var year = movieInfoAggregates.forYear(2005);
+        assertEquals(2, year.getCount());
+        assertEquals(List.of(new CastAppearances("Bruce Willis", 1), new CastAppearances("Christian Bale", 1)), year.getTopCast());
+        assertEquals(1, year.getReleaseMonths().get(5));
+        assertEquals(1, year.getWithoutReleaseDate());
+        assertEquals(0, movieInfoAggregates.forYear(1999).getCount());
+    }
+
+    @Test
+    void eventsUpdateIncrementally() {
+        movieInfoAggregates.rebuild().block();
+
+        movieInfoAggregates.apply(new MovieInfoEvent(1, MovieInfoChangeType.INSERT,
+                new MovieInfo("4", "Batman Begins Again", 2005, List.of("Christian Bale"), LocalDate.parse("2005-07-01"))));
+        assertEquals(new CastAppearances("Christian Bale", 2), movieInfoAggregates.forYear(2005).getTopCast().get(0));
+
+        // moving a movie to another year takes it out of the old one
+        movieInfoAggregates.apply(new MovieInfoEvent(2, MovieInfoChangeType.UPDATE,
+                new MovieInfo("3", "Sin City", 2006, List.of("Bruce Willis"), LocalDate.parse("2006-04-01"))));
+        assertEquals(2, movieInfoAggregates.forYear(2005).getCount());
+        assertEquals(2, movieInfoAggregates.forYear(2006).getCount());
+        assertEquals(0, movieInfoAggregates.forYear(2005).getWithoutReleaseDate());
+
+        var deleted = new MovieInfo();
+        deleted.setMovieInfoId("2");
+        movieInfoAggregates.apply(new MovieInfoEvent(3, MovieInfoChangeType.DELETE, deleted));
+        assertEquals(List.of(new CastAppearances("Bruce Willis", 1)), movieInfoAggregates.forYear(2006).getTopCast());
+
+        // replaying an event changes nothing
+        movieInfoAggregates.apply(new MovieInfoEvent(3, MovieInfoChangeType.DELETE, deleted));
+        assertEquals(1, movieInfoAggregates.forYear(2006).getCount());
+    }
+}
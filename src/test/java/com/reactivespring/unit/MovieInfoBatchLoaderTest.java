@@ -0,0 +1,116 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.config.MovieInfoResilienceProperties;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoStoreUnavailableException;
+import com.reactivespring.metrics.ReactiveTimers;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import com.reactivespring.service.MovieInfoBatchLoader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoBatchLoaderTest {
+
+    private final MovieInfoRepository movieInfoRepository = mock(MovieInfoRepository.class);
+
+    // ids of every findAllById
+    private final List<List<String>> queries = new CopyOnWriteArrayList<>();
+
+    private MovieInfoBatchLoader loader(int chunkSize, Duration window, int maxSize) {
+        when(movieInfoRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            var ids = new ArrayList<String>();
+            invocation.<Iterable<String>>getArgument(0).forEach(ids::add);
+            queries.add(ids);
+            return Flux.fromIterable(ids)
+                    .filter(id -> !id.startsWith("unknown"))
+                    .map(id -> new MovieInfo(id, "movie " + id, 2002, List.of("nag"), LocalDate.parse("2005-06-01")));
+        });
+        var properties = new MovieInfoResilienceProperties();
+        properties.getRetry().setMaxRetries(0);
+        return new MovieInfoBatchLoader(movieInfoRepository, new ReactiveTimers(new SimpleMeterRegistry()),
+                new MovieInfoStoreResilience(properties), chunkSize, true, window, maxSize);
+    }
+
+    @Test
+    void concurrentLoadsShareOneQuery() {
+        var loader = loader(200, Duration.ofMillis(50), 100);
+
+        StepVerifier.create(Flux.merge(loader.load("a"), loader.load("b"), loader.load("a"), loader.load("unknown"))
+                        .map(MovieInfo::getMovieInfoId)
+                        .sort())
+                .expectNext("a", "a", "b")
+                .verifyComplete();
+
+        assertEquals(List.of(List.of("a", "b", "unknown")), queries);
+    }
+
+    @Test
+    void fullBatchIsSentBeforeTheWindowEnds() {
+        var loader = loader(200, Duration.ofSeconds(30), 2);
+
+        StepVerifier.create(Flux.merge(loader.load("a"), loader.load("b")))
+                .expectNextCount(2)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, queries.size());
+    }
+
+    @Test
+    void cancelledLoadsAreLeftOut() {
+        var loader = loader(200, Duration.ofMillis(50), 100);
+
+        loader.load("gone").subscribe().dispose();
+        StepVerifier.create(loader.load("a").map(MovieInfo::getMovieInfoId))
+                .expectNext("a")
+                .verifyComplete();
+
+        // nobody waiting, nothing sent
+        loader.load("gone").subscribe().dispose();
+        StepVerifier.create(Mono.delay(Duration.ofMillis(100))).expectNextCount(1).verifyComplete();
+
+        assertEquals(List.of(List.of("a")), queries);
+    }
+
+    @Test
+    void loadAllIsChunked() {
+        var loader = loader(2, Duration.ofMillis(1), 100);
+
+        StepVerifier.create(loader.loadAll(List.of("a", "b", "c", "unknown", "e")))
+                .expectNextCount(4)
+                .verifyComplete();
+
+        assertEquals(3, queries.size());
+    }
+
+    @Test
+    void failedQueryFailsEveryWaiter() {
+        when(movieInfoRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.error(new DataAccessResourceFailureException("connection refused")));
+        var properties = new MovieInfoResilienceProperties();
+        properties.getRetry().setMaxRetries(0);
+        var loader = new MovieInfoBatchLoader(movieInfoRepository, new ReactiveTimers(new SimpleMeterRegistry()),
+                new MovieInfoStoreResilience(properties), 200, true, Duration.ofMillis(20), 100);
+
+        StepVerifier.create(loader.load("a")).expectError(MovieInfoStoreUnavailableException.class).verify();
+        StepVerifier.create(Flux.mergeDelayError(2, loader.load("a"), loader.load("b")))
+                .expectError(MovieInfoStoreUnavailableException.class)
+                .verify();
+    }
+}
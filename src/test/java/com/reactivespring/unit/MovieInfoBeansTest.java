@@ -0,0 +1,45 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.MoviesInfoServiceApplication;
+import com.reactivespring.faststart.MovieInfoBeans;
+import com.reactivespring.stream.MongoChangeStreamTailer;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MovieInfoBeansTest {
+
+    @Test
+    void registersEveryScannedComponent() {
+        var mainClasses = MoviesInfoServiceApplication.class.getProtectionDomain().getCodeSource().getLocation();
+        var scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Component.class));
+        var scanned = scanner.findCandidateComponents(MoviesInfoServiceApplication.class.getPackageName()).stream()
+                .map(definition -> ClassUtils.resolveClassName(definition.getBeanClassName(), null))
+                .filter(type -> type.getProtectionDomain().getCodeSource().getLocation().equals(mainClasses))
+                .filter(type -> type != MoviesInfoServiceApplication.class)
+                .collect(Collectors.toSet());
+
+        Set<Class<?>> registered = new HashSet<>(MovieInfoBeans.COMPONENTS);
+        // registered only with movieinfo.stream.source=MONGO, like its @ConditionalOnProperty
+        registered.add(MongoChangeStreamTailer.class);
+
+        assertEquals(scanned, registered);
+    }
+
+    @Test
+    void eagerBeansAreRegistered() {
+        MovieInfoBeans.EAGER.stream()
+                .filter(type -> !type.isInterface())
+                .forEach(type -> assertTrue(MovieInfoBeans.COMPONENTS.contains(type), type.getName()));
+    }
+}
@@ -0,0 +1,96 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MovieInfoCacheTest {
+
+    private final MovieInfoCache movieInfoCache =
+            new MovieInfoCache(true, 100, Duration.ofMinutes(5), Duration.ofSeconds(10), Duration.ofHours(1));
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Mono<MovieInfo> findById(String id) {
+        return Mono.defer(() -> {
+            loads.incrementAndGet();
+            return "xyz".equals(id)
+                    ? Mono.just(new MovieInfo(id, "shiva mani", 2002, List.of("nag", "amala"), LocalDate.parse("2005-06-01")))
+                    : Mono.empty();
+        });
+    }
+
+    @Test
+    void secondReadIsServedFromCache() {
+        StepVerifier.create(movieInfoCache.get("xyz", this::findById)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(movieInfoCache.get("xyz", this::findById)).expectNextCount(1).verifyComplete();
+
+        assertEquals(1, loads.get());
+        assertEquals(1, movieInfoCache.statistics().getHitCount());
+        assertEquals(1, movieInfoCache.statistics().getMissCount());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() {
+        var slowLoads = new AtomicInteger();
+        var first = movieInfoCache.get("xyz", id -> findById(id).doOnSubscribe(s -> slowLoads.incrementAndGet())
+                .delayElement(Duration.ofMillis(200)));
+        var second = movieInfoCache.get("xyz", id -> findById(id).doOnSubscribe(s -> slowLoads.incrementAndGet()));
+
+        StepVerifier.create(Mono.zip(first, second))
+                .assertNext(both -> assertEquals(both.getT1(), both.getT2()))
+                .verifyComplete();
+        assertEquals(1, slowLoads.get());
+    }
+
+    @Test
+    void unknownIdIsCachedAsEmpty() {
+        StepVerifier.create(movieInfoCache.get("abc", this::findById)).verifyComplete();
+        StepVerifier.create(movieInfoCache.get("abc", this::findById)).verifyComplete();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getAllOnlyLoadsWhatIsNotCached() {
+        StepVerifier.create(movieInfoCache.get("xyz", this::findById)).expectNextCount(1).verifyComplete();
+        var requested = new ArrayList<String>();
+
+        StepVerifier.create(movieInfoCache.getAll(List.of("xyz", "abc"), ids -> {
+                    requested.addAll(ids);
+                    return Flux.fromIterable(ids).concatMap(this::findById);
+                }))
+                .assertNext(movieInfos -> assertEquals(Set.of("xyz"), movieInfos.keySet()))
+                .verifyComplete();
+        assertEquals(List.of("abc"), requested);
+
+        // abc is now cached as unknown
+        StepVerifier.create(movieInfoCache.get("abc", this::findById)).verifyComplete();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void putAndInvalidateFollowTheWritePath() {
+        movieInfoCache.put(new MovieInfo("abc", "kushi", 2001, List.of("pavan"), LocalDate.parse("2002-11-10")));
+        StepVerifier.create(movieInfoCache.get("abc", this::findById))
+                .assertNext(movieInfo -> assertEquals("kushi", movieInfo.getName()))
+                .verifyComplete();
+        assertEquals(0, loads.get());
+
+        movieInfoCache.invalidate("abc");
+        StepVerifier.create(movieInfoCache.get("abc", this::findById)).verifyComplete();
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,325 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exceptions.SlowConsumerException;
+import com.reactivespring.exceptions.StreamResetException;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.BackpressurePolicy;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.MovieInfoStreamEncoder;
+import com.reactivespring.stream.MovieInfoStreamFilter;
+import com.reactivespring.stream.StreamSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoChangeStreamTest {
+
+    private final MovieInfoRepository movieInfoRepositoryMock = mock(MovieInfoRepository.class);
+
+    private MovieInfo movieInfo(String id) {
+        return new MovieInfo(id, "okkadu", 2003, List.of("mahesh", "boomika"), LocalDate.parse("2003-08-08"));
+    }
+
+    @Test
+    void replaysOnlyTheRingBuffer() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 2, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("3"));
+
+        assertEquals(2, changeStream.getBufferedCount());
+
+        StepVerifier.create(changeStream.subscribe(null).map(MovieInfoEvent::getSequence))
+                .expectNext(2L, 3L)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resumesAfterSequenceAndContinuesLive() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+
+        StepVerifier.create(changeStream.subscribe(1L).map(MovieInfoEvent::getSequence))
+                .expectNext(2L)
+                .then(() -> changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("3")))
+                .expectNext(3L)
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, changeStream.getSubscriberCount());
+    }
+
+    @Test
+    void fallsBackToMongoWhenSequenceEvicted() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 2, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("3"));
+        when(movieInfoRepositoryMock.findAll()).thenReturn(Flux.just(movieInfo("1"), movieInfo("2"), movieInfo("3")));
+
+        StepVerifier.create(changeStream.subscribe(0L))
+                .expectNextCount(3)
+                .assertNext(event -> {
+                    assertEquals(MovieInfoChangeType.RESYNC, event.getType());
+                    assertEquals(3L, event.getSequence());
+                })
+                .then(() -> changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("4")))
+                .assertNext(event -> assertEquals(4L, event.getSequence()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void fallsBackToMongoWhenSequenceIsAheadOfTheHead() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        when(movieInfoRepositoryMock.findAll()).thenReturn(Flux.just(movieInfo("1")));
+
+        // numbered before a restart
+        StepVerifier.create(changeStream.subscribe(42L)
+                        .filter(event -> event.getType() != MovieInfoChangeType.RESYNC)
+                        .map(event -> event.getMovieInfo().getMovieInfoId()))
+                .expectNext("1")
+                .then(() -> changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2")))
+                .expectNext("2")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void eventIdsOfAnotherInstanceFallBackToMongo() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        var restarted = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+        restarted.publish(MovieInfoChangeType.INSERT, movieInfo("3"));
+        when(movieInfoRepositoryMock.findAll()).thenReturn(Flux.just(movieInfo("1"), movieInfo("2"), movieInfo("3")));
+
+        assertEquals(1L, changeStream.resumeSequence(changeStream.eventId(1)));
+        assertEquals(-1L, changeStream.resumeSequence("1"));
+        assertNull(changeStream.resumeSequence(null));
+
+        // sequence 1 of the other instance is not our sequence 1
+        StepVerifier.create(changeStream.subscribe(changeStream.resumeSequence(restarted.eventId(1)))
+                        .filter(event -> event.getType() != MovieInfoChangeType.RESYNC)
+                        .map(event -> event.getMovieInfo().getMovieInfoId()))
+                .expectNext("1", "2", "3")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void onlyTheEndOfAResyncCanBeResumedFrom() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        var encoder = new MovieInfoStreamEncoder(Jackson2ObjectMapperBuilder.json().build(), changeStream);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+        when(movieInfoRepositoryMock.findAll()).thenReturn(Flux.just(movieInfo("1"), movieInfo("2")));
+
+        var frames = changeStream.subscribe(-1L)
+                .take(3)
+                .map(event -> encoder.serverSentEvent(event, new DefaultDataBufferFactory()).toString(StandardCharsets.UTF_8))
+                .collectList()
+                .block();
+
+        assertTrue(frames.get(0).startsWith("event:insert\ndata:{"));
+        assertTrue(frames.get(1).startsWith("event:insert\ndata:{"));
+        assertEquals("id:" + changeStream.eventId(2) + "\nevent:resync\ndata:null\n\n", frames.get(2));
+    }
+
+    @Test
+    void liveEventsOverflowingDuringAResyncReadTheCatalogueAgain() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 2, BackpressurePolicy.DISCONNECT, StreamSource.LOCAL, 1000);
+        var firstRead = Sinks.many().unicast().<MovieInfo>onBackpressureBuffer();
+        when(movieInfoRepositoryMock.findAll()).thenReturn(firstRead.asFlux(),
+                Flux.just(movieInfo("1"), movieInfo("2"), movieInfo("3"), movieInfo("4")));
+
+        StepVerifier.create(changeStream.subscribe(-1L).map(event -> event.getType() + ":" + event.getSequence()))
+                .then(() -> {
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("3"));
+                    firstRead.tryEmitComplete();
+                })
+                .expectNext("INSERT:0", "INSERT:0", "INSERT:0", "INSERT:0", "RESYNC:3")
+                .then(() -> changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("4")))
+                .expectNext("INSERT:4")
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, changeStream.getDisconnectedSubscribers());
+        assertEquals(0, changeStream.getDroppedEvents());
+    }
+
+    @Test
+    void dropOldestKeepsSlowSubscriberConnected() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 2, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+
+        StepVerifier.create(changeStream.subscribe(0L).map(MovieInfoEvent::getSequence), 0)
+                .then(() -> {
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("3"));
+                })
+                .thenRequest(2)
+                .expectNext(2L, 3L)
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, changeStream.getDroppedEvents());
+    }
+
+    @Test
+    void disconnectTerminatesSlowSubscriber() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 2, BackpressurePolicy.DISCONNECT, StreamSource.LOCAL, 1000);
+
+        StepVerifier.create(changeStream.subscribe(0L), 0)
+                .then(() -> {
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("3"));
+                })
+                .expectError(SlowConsumerException.class)
+                .verify();
+
+        assertEquals(1, changeStream.getDisconnectedSubscribers());
+    }
+
+    @Test
+    void resetCutsSubscribersAndSendsEveryoneBackToMongo() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.MONGO, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+        when(movieInfoRepositoryMock.findAll()).thenReturn(Flux.just(movieInfo("1"), movieInfo("2"), movieInfo("3")));
+
+        StepVerifier.create(changeStream.subscribe(2L))
+                .then(() -> changeStream.reset("history lost"))
+                .expectError(StreamResetException.class)
+                .verify();
+
+        assertEquals(0, changeStream.getSubscriberCount());
+        assertEquals(0, changeStream.getBufferedCount());
+        // even the head before the reset missed whatever was lost
+        StepVerifier.create(changeStream.subscribe(2L).map(MovieInfoEvent::getType))
+                .expectNext(MovieInfoChangeType.INSERT, MovieInfoChangeType.INSERT, MovieInfoChangeType.INSERT)
+                .expectNext(MovieInfoChangeType.RESYNC)
+                .then(() -> changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("4")))
+                .expectNext(MovieInfoChangeType.INSERT)
+                .thenCancel()
+                .verify();
+        assertEquals(1, changeStream.getBufferedCount());
+    }
+
+    @Test
+    void localChangesIgnoredWhenFedByMongo() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.MONGO, 1000);
+        changeStream.recordLocalChange(MovieInfoChangeType.INSERT, movieInfo("1"));
+
+        assertEquals(0, changeStream.getHeadSequence());
+    }
+
+    @Test
+    void filteredSubscriberGetsMatchingChangesAndAllDeletes() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+        changeStream.publish(MovieInfoChangeType.INSERT, new MovieInfo("2", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")));
+
+        StepVerifier.create(changeStream.subscribe(0L, MovieInfoStreamFilter.of(null, "christian bale", "BAT")).map(MovieInfoEvent::getSequence))
+                .expectNext(2L)
+                .then(() -> {
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("3"));
+                    changeStream.publish(MovieInfoChangeType.INSERT, new MovieInfo("4", "The Prestige", 2006, List.of("Christian Bale"), LocalDate.parse("2006-10-20")));
+                    changeStream.publish(MovieInfoChangeType.DELETE, new MovieInfo("3", null, null, null, null));
+                    changeStream.publish(MovieInfoChangeType.UPDATE, new MovieInfo("2", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")));
+                })
+                .expectNext(5L, 6L)
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, changeStream.getSubscriberCount());
+    }
+
+    @Test
+    void movieMovedOutOfTheFilterIsDeletedForItsSubscribers() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("1"));
+
+        StepVerifier.create(changeStream.subscribe(0L, MovieInfoStreamFilter.of(2003, null, null)))
+                .assertNext(event -> assertEquals(MovieInfoChangeType.INSERT, event.getType()))
+                .then(() -> {
+                    changeStream.publish(MovieInfoChangeType.UPDATE, new MovieInfo("1", "okkadu", 2004, List.of("mahesh", "boomika"), LocalDate.parse("2003-08-08")));
+                    // no longer in 2003, nothing to tell
+                    changeStream.publish(MovieInfoChangeType.UPDATE, new MovieInfo("1", "okkadu", 2005, List.of("mahesh"), LocalDate.parse("2003-08-08")));
+                    changeStream.publish(MovieInfoChangeType.UPDATE, new MovieInfo("1", "okkadu", 2003, List.of("mahesh"), LocalDate.parse("2003-08-08")));
+                })
+                .assertNext(event -> {
+                    assertEquals(2L, event.getSequence());
+                    assertEquals(MovieInfoChangeType.DELETE, event.getType());
+                    assertEquals("1", event.getMovieInfo().getMovieInfoId());
+                })
+                .assertNext(event -> {
+                    assertEquals(4L, event.getSequence());
+                    assertEquals(MovieInfoChangeType.UPDATE, event.getType());
+                    assertEquals(2005, event.getPrevious().getYear());
+                })
+                .thenCancel()
+                .verify();
+
+        // replayed from the ring the same way
+        StepVerifier.create(changeStream.subscribe(1L, MovieInfoStreamFilter.of(2003, null, null)).map(MovieInfoEvent::getType))
+                .expectNext(MovieInfoChangeType.DELETE, MovieInfoChangeType.UPDATE)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void unfilteredSubscriberStillGetsEverything() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+
+        var filtered = changeStream.subscribe(null, MovieInfoStreamFilter.of(2003, null, null)).map(MovieInfoEvent::getSequence);
+        var all = changeStream.subscribe(null).map(MovieInfoEvent::getSequence);
+
+        StepVerifier.create(Flux.merge(filtered.take(1), all.take(2)).sort())
+                .then(() -> {
+                    changeStream.publish(MovieInfoChangeType.INSERT, new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")));
+                    changeStream.publish(MovieInfoChangeType.INSERT, movieInfo("2"));
+                })
+                .expectNext(1L, 2L, 2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void eventIsEncodedOnceForEverySubscriber() {
+        var changeStream = new MovieInfoChangeStream(movieInfoRepositoryMock, 10, 16, BackpressurePolicy.DROP_OLDEST, StreamSource.LOCAL, 1000);
+        var encoder = new MovieInfoStreamEncoder(Jackson2ObjectMapperBuilder.json().build(), changeStream);
+        var event = new MovieInfoEvent(7L, MovieInfoChangeType.INSERT, movieInfo("1"));
+
+        var first = encoder.serverSentEvent(event, new DefaultDataBufferFactory());
+        var second = encoder.serverSentEvent(event, new DefaultDataBufferFactory());
+        encoder.ndjson(event, new DefaultDataBufferFactory());
+
+        assertEquals(1, encoder.getEncoded());
+        var frame = first.toString(StandardCharsets.UTF_8);
+        assertEquals(frame, second.toString(StandardCharsets.UTF_8));
+        assertTrue(frame.startsWith("id:" + changeStream.eventId(7) + "\nevent:insert\ndata:{"));
+        assertTrue(frame.endsWith("}\n\n"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.replica.MovieInfoReplica;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.StreamSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoReplicaTest {
+
+    private final MovieInfoRepository movieInfoRepository = mock(MovieInfoRepository.class);
+
+    private MovieInfoReplica movieInfoReplica;
+
+    @BeforeEach
+    void setUp() {
+        when(movieInfoRepository.findAll()).thenReturn(Flux.just(
+                new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("2", "The Prestige", 2006, List.of("Christian Bale", "Hugh Jackman"), LocalDate.parse("2006-10-20")),
+                new MovieInfo("3", "Sin City", 2005, List.of("Bruce Willis"), null)));
+        movieInfoReplica = new MovieInfoReplica(movieInfoRepository, mock(MovieInfoChangeStream.class), true, Duration.ofHours(1), StreamSource.MONGO);
+    }
+
+    private static List<String> ids(Flux<MovieInfo> movieInfos) {
+        return movieInfos.map(MovieInfo::getMovieInfoId).collectList().block();
+    }
+
+    @Test
+    void notReadyBeforeTheFirstLoad() {
+        assertFalse(movieInfoReplica.isReady());
+        assertEquals(Status.OUT_OF_SERVICE, movieInfoReplica.health().getStatus());
+
+        movieInfoReplica.reload().block();
+
+        assertTrue(movieInfoReplica.isReady());
+        assertEquals(Status.UP, movieInfoReplica.health().getStatus());
+        assertEquals(3, movieInfoReplica.size());
+    }
+
+    @Test
+    void answersFromTheIndexes() {
+        movieInfoReplica.reload().block();
+
+        assertEquals(List.of("1", "2", "3"), ids(movieInfoReplica.findAll()));
+        assertEquals(List.of("1", "3"), ids(movieInfoReplica.findByYear(2005)));
+        assertEquals(List.of(), ids(movieInfoReplica.findByYear(1999)));
+        StepVerifier.create(movieInfoReplica.findByName("The Prestige").map(MovieInfo::getMovieInfoId)).expectNext("2").verifyComplete();
+        StepVerifier.create(movieInfoReplica.findById("3").map(MovieInfo::getName)).expectNext("Sin City").verifyComplete();
+        StepVerifier.create(movieInfoReplica.findById("unknown")).verifyComplete();
+
+        // the same cast member is stored once
+        var batman = movieInfoReplica.findById("1").block();
+        var prestige = movieInfoReplica.findById("2").block();
+        assertSame(batman.getCast().get(0), prestige.getCast().get(0));
+    }
+
+    @Test
+    void eventsUpdateTheIndexes() {
+        movieInfoReplica.reload().block();
+
+        // moving a movie to another year takes it out of the old one
+        movieInfoReplica.apply(new MovieInfoEvent(1, MovieInfoChangeType.UPDATE,
+                new MovieInfo("3", "Sin City", 2006, List.of("Bruce Willis"), LocalDate.parse("2006-04-01"))));
+        assertEquals(List.of("1"), ids(movieInfoReplica.findByYear(2005)));
+        assertEquals(List.of("2", "3"), ids(movieInfoReplica.findByYear(2006)));
+
+        // two movies with one name, the lowest id answers
+        movieInfoReplica.apply(new MovieInfoEvent(2, MovieInfoChangeType.INSERT,
+                new MovieInfo("0", "The Prestige", 1958, List.of(), null)));
+        StepVerifier.create(movieInfoReplica.findByName("The Prestige").map(MovieInfo::getMovieInfoId)).expectNext("0").verifyComplete();
+
+        var deleted = new MovieInfo();
+        deleted.setMovieInfoId("0");
+        movieInfoReplica.apply(new MovieInfoEvent(3, MovieInfoChangeType.DELETE, deleted));
+        StepVerifier.create(movieInfoReplica.findByName("The Prestige").map(MovieInfo::getMovieInfoId)).expectNext("2").verifyComplete();
+        assertEquals(3, movieInfoReplica.size());
+    }
+
+    @Test
+    void eventsDuringAReloadAreNotLost() {
+        var load = Sinks.many().unicast().<MovieInfo>onBackpressureBuffer();
+        when(movieInfoRepository.findAll()).thenReturn(load.asFlux());
+
+        var reload = movieInfoReplica.reload().toFuture();
+        load.tryEmitNext(new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")));
+        // deleted after the load read it, inserted after the load passed it
+        var deleted = new MovieInfo();
+        deleted.setMovieInfoId("1");
+        movieInfoReplica.apply(new MovieInfoEvent(1, MovieInfoChangeType.DELETE, deleted));
+        movieInfoReplica.apply(new MovieInfoEvent(2, MovieInfoChangeType.INSERT,
+                new MovieInfo("4", "Memento", 2000, List.of("Guy Pearce"), LocalDate.parse("2000-09-05"))));
+        load.tryEmitComplete();
+        reload.join();
+
+        assertEquals(List.of("4"), ids(movieInfoReplica.findAll()));
+    }
+
+    @Test
+    void needsTheMongoStreamSource() {
+        assertThrows(IllegalStateException.class, () ->
+                new MovieInfoReplica(movieInfoRepository, mock(MovieInfoChangeStream.class), true, Duration.ofHours(1), StreamSource.LOCAL));
+    }
+}
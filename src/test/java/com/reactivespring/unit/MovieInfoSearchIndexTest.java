@@ -0,0 +1,132 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exceptions.SearchIndexNotReadyException;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.search.MovieInfoSearchIndex;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoSearchIndexTest {
+
+    private final MovieInfoRepository movieInfoRepository = mock(MovieInfoRepository.class);
+
+    private MovieInfoSearchIndex movieInfoSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        when(movieInfoRepository.findAll()).thenReturn(Flux.just(
+                new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
+                new MovieInfo("3", "Dark Knight Rises", 2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+        movieInfoSearchIndex = new MovieInfoSearchIndex(movieInfoRepository, mock(MovieInfoChangeStream.class), true, 2, Duration.ofHours(1));
+        movieInfoSearchIndex.rebuild().block();
+    }
+
+    private List<String> ids(String query) {
+        return movieInfoSearchIndex.search(query, 0, 2).getHits().stream()
+                .map(hit -> hit.getMovieInfo().getMovieInfoId())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void prefixOfLastTokenMatches() {
+        assertEquals(List.of("3", "2"), ids("dark kni"));
+        assertEquals(List.of("1"), ids("BAT"));
+    }
+
+    @Test
+    void allTokensMustMatch() {
+        assertEquals(List.of("3"), ids("knight hardy"));
+        assertTrue(ids("batman hardy").isEmpty());
+    }
+
+    @Test
+    void nameRanksAboveCastAndExactAbovePrefix() {
+        movieInfoSearchIndex.index(new MovieInfo("4", "Hardy Boys", 2020, List.of("someone"), LocalDate.parse("2020-01-01")));
+
+        var hits = movieInfoSearchIndex.search("hardy", 0, 2).getHits();
+        assertEquals("4", hits.get(0).getMovieInfo().getMovieInfoId());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+
+        var exact = movieInfoSearchIndex.search("dark", 0, 2).getHits().get(0).getScore();
+        var prefix = movieInfoSearchIndex.search("dar", 0, 2).getHits().get(0).getScore();
+        assertTrue(exact > prefix);
+    }
+
+    @Test
+    void pagesAreCappedAndCounted() {
+        var page = movieInfoSearchIndex.search("christian", 1, 50);
+
+        assertEquals(3, page.getTotal());
+        assertEquals(2, page.getSize());
+        assertEquals(1, page.getHits().size());
+    }
+
+    @Test
+    void updateAndRemoveAreReflected() {
+        movieInfoSearchIndex.index(new MovieInfo("1", "Batman Returns", 1992, List.of("Michael Keaton"), LocalDate.parse("1992-06-19")));
+        assertTrue(ids("begins").isEmpty());
+        assertEquals(List.of("1"), ids("returns"));
+
+        movieInfoSearchIndex.remove("1");
+        assertTrue(ids("batman").isEmpty());
+        assertEquals(2, movieInfoSearchIndex.size());
+    }
+
+    @Test
+    void notReadyUntilALoadSucceeded() {
+        when(movieInfoRepository.findAll()).thenReturn(Flux.error(new DataAccessResourceFailureException("no connection")),
+                Flux.just(new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"))));
+        var searchIndex = new MovieInfoSearchIndex(movieInfoRepository, mock(MovieInfoChangeStream.class), true, 10, Duration.ofHours(1));
+
+        StepVerifier.create(searchIndex.rebuild()).verifyError(DataAccessResourceFailureException.class);
+        assertFalse(searchIndex.isReady());
+        assertThrows(SearchIndexNotReadyException.class, () -> searchIndex.search("batman", 0, 10));
+
+        // what the next rebuild interval or sequence gap does
+        searchIndex.rebuild().block();
+        assertTrue(searchIndex.isReady());
+        assertEquals(1, searchIndex.search("batman", 0, 10).getTotal());
+    }
+
+    @Test
+    void movieDeletedWhileLoadingIsNotIndexed() {
+        var load = Sinks.many().unicast().<MovieInfo>onBackpressureBuffer();
+        when(movieInfoRepository.findAll()).thenReturn(load.asFlux());
+        var searchIndex = new MovieInfoSearchIndex(movieInfoRepository, mock(MovieInfoChangeStream.class), true, 10, Duration.ofHours(1));
+
+        searchIndex.rebuild().subscribe();
+        // findAll read the movie before it was deleted, but only emits it afterwards
+        var deleted = new MovieInfo();
+        deleted.setMovieInfoId("1");
+        searchIndex.apply(new MovieInfoEvent(1, MovieInfoChangeType.DELETE, deleted));
+        load.tryEmitNext(new MovieInfo("1", "Batman Begins", 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")));
+        load.tryEmitNext(new MovieInfo("2", "The Dark Knight", 2008, List.of("Christian Bale"), LocalDate.parse("2008-07-18")));
+        assertFalse(searchIndex.isReady());
+        load.tryEmitComplete();
+
+        assertTrue(searchIndex.isReady());
+        assertEquals(1, searchIndex.size());
+        assertTrue(searchIndex.search("batman", 0, 10).getHits().isEmpty());
+    }
+}
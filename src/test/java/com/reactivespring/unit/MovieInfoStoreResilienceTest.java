@@ -0,0 +1,163 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.config.MovieInfoResilienceProperties;
+import com.reactivespring.exceptions.MovieInfoStoreUnavailableException;
+import com.reactivespring.resilience.CircuitBreaker;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MovieInfoStoreResilienceTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(4, 4, 50, Duration.ofSeconds(10), 2, now::get);
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private MovieInfoStoreResilience resilience(int minimumCalls) {
+        var properties = new MovieInfoResilienceProperties();
+        properties.setDefaultTimeout(Duration.ofMillis(100));
+        properties.setTimeouts(Map.of("slow", Duration.ofMillis(20)));
+        properties.getRetry().setMaxRetries(2);
+        properties.getRetry().setMinBackoff(Duration.ofMillis(1));
+        properties.getRetry().setMaxBackoff(Duration.ofMillis(5));
+        properties.getCircuitBreaker().setSlidingWindowSize(10);
+        properties.getCircuitBreaker().setMinimumCalls(minimumCalls);
+        return new MovieInfoStoreResilience(properties);
+    }
+
+    private <T> Mono<T> failing(RuntimeException ex) {
+        return Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(ex);
+        });
+    }
+
+    @Test
+    void opensAtTheFailureRateAndClosesAfterSuccessfulTrials() {
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        circuitBreaker.onFailure();
+        // 2 of 4 failed
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getRejected());
+    }
+
+    @Test
+    void failedTrialReopens() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure();
+        }
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void readsAreRetriedThenReportedUnavailable() {
+        StepVerifier.create(resilience(10).read("findById", failing(new DataAccessResourceFailureException("no connection"))))
+                .verifyError(MovieInfoStoreUnavailableException.class);
+
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void writesAndNonTransientErrorsAreNotRetried() {
+        var resilience = resilience(10);
+        StepVerifier.create(resilience.write("save", failing(new DataAccessResourceFailureException("no connection"))))
+                .verifyError(MovieInfoStoreUnavailableException.class);
+        StepVerifier.create(resilience.read("findById", failing(new DuplicateKeyException("duplicate"))))
+                .verifyError(DuplicateKeyException.class);
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void deadlineIsPerOperation() {
+        var resilience = resilience(10);
+        StepVerifier.create(resilience.read("findById", Mono.just("xyz").delayElement(Duration.ofMillis(50))))
+                .expectNext("xyz")
+                .verifyComplete();
+        StepVerifier.create(resilience.write("slow", Mono.just("xyz").delayElement(Duration.ofMillis(50))))
+                .verifyError(MovieInfoStoreUnavailableException.class);
+    }
+
+    @Test
+    void listDeadlineOnlyCoversTheFirstDocument() {
+        StepVerifier.create(resilience(10).read("slow", Flux.just("a").delayElements(Duration.ofMillis(50))))
+                .verifyError(MovieInfoStoreUnavailableException.class);
+
+        // a reader slower than the deadline, before its first request and between documents
+        var resilience = resilience(1);
+        StepVerifier.create(resilience.read("slow", Flux.range(1, 3)), 0)
+                .thenAwait(Duration.ofMillis(50))
+                .thenRequest(1)
+                .expectNext(1)
+                .thenAwait(Duration.ofMillis(50))
+                .thenRequest(2)
+                .expectNext(2, 3)
+                .verifyComplete();
+        // a single failure would have opened it
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void listIsNotRetriedOnceItEmitted() {
+        var resilience = resilience(10);
+        var partial = Flux.defer(() -> {
+            attempts.incrementAndGet();
+            return Flux.just("a", "b").concatWith(Flux.error(new DataAccessResourceFailureException("connection reset")));
+        });
+
+        StepVerifier.create(resilience.read("findAll", partial))
+                .expectNext("a", "b")
+                .verifyError(MovieInfoStoreUnavailableException.class);
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void openCircuitRefusesWithoutCallingMongo() {
+        var resilience = resilience(2);
+        StepVerifier.create(resilience.read("findById", failing(new DataAccessResourceFailureException("no connection"))))
+                .verifyError(MovieInfoStoreUnavailableException.class);
+        // the breaker opened after the second attempt, the third was refused
+        assertEquals(2, attempts.get());
+        assertEquals(CircuitBreaker.State.OPEN, resilience.getCircuitBreaker().getState());
+
+        StepVerifier.create(resilience.read("findByYear", Flux.defer(() -> {
+                    attempts.incrementAndGet();
+                    return Flux.just("a");
+                })))
+                .verifyError(MovieInfoStoreUnavailableException.class);
+        assertEquals(2, attempts.get());
+    }
+}
@@ -0,0 +1,103 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.exceptions.StreamLimitExceededException;
+import com.reactivespring.stream.MovieInfoStreamSessions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MovieInfoStreamSessionsTest {
+
+    private static MockServerWebExchange exchange(String client) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/v1/movieinfos/stream")
+                .remoteAddress(new InetSocketAddress(client, 40000)));
+    }
+
+    private static Flux<DataBuffer> frames(String... frames) {
+        return Flux.fromArray(frames)
+                .map(frame -> new DefaultDataBufferFactory().wrap(frame.getBytes(StandardCharsets.UTF_8)))
+                .concatWith(Flux.never());
+    }
+
+    @Test
+    void perClientLimit() {
+        var sessions = new MovieInfoStreamSessions(10, 1, Duration.ofSeconds(15), Duration.ofSeconds(60), Duration.ZERO);
+
+        StepVerifier.create(sessions.open(exchange("10.0.0.1"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames("a\n")))
+                .expectNextCount(1)
+                .then(() -> {
+                    StepVerifier.create(sessions.open(exchange("10.0.0.1"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames()))
+                            .expectError(StreamLimitExceededException.class)
+                            .verify();
+                    StepVerifier.create(sessions.open(exchange("10.0.0.2"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames("b\n")))
+                            .expectNextCount(1)
+                            .thenCancel()
+                            .verify();
+                })
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, sessions.getConnections());
+        StepVerifier.create(sessions.open(exchange("10.0.0.1"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames("c\n")))
+                .expectNextCount(1)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void globalLimit() {
+        var sessions = new MovieInfoStreamSessions(1, 10, Duration.ofSeconds(15), Duration.ofSeconds(60), Duration.ZERO);
+
+        StepVerifier.create(sessions.open(exchange("10.0.0.1"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames("a\n")))
+                .expectNextCount(1)
+                .then(() -> StepVerifier.create(sessions.open(exchange("10.0.0.2"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames()))
+                        .expectError(StreamLimitExceededException.class)
+                        .verify())
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void quietStreamGetsHeartbeats() {
+        var sessions = new MovieInfoStreamSessions(10, 10, Duration.ofSeconds(15), Duration.ofSeconds(60), Duration.ZERO);
+
+        StepVerifier.create(sessions.open(exchange("10.0.0.1"), MovieInfoStreamSessions.Heartbeat.SERVER_SENT_EVENT, frames()))
+                .then(sessions::sweep)
+                .assertNext(frame -> assertEquals(":\n\n", frame.toString(StandardCharsets.UTF_8)))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void stalledStreamIsEvicted() {
+        var sessions = new MovieInfoStreamSessions(10, 10, Duration.ofSeconds(15), Duration.ZERO, Duration.ZERO);
+
+        // never requests anything
+        StepVerifier.create(sessions.open(exchange("10.0.0.1"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames("a\n")), 0)
+                .then(() -> assertEquals(1, sessions.getConnections()))
+                .then(sessions::sweep)
+                .verifyComplete();
+
+        assertEquals(0, sessions.getConnections());
+    }
+
+    @Test
+    void streamEndsAfterMaxLifetime() {
+        var sessions = new MovieInfoStreamSessions(10, 10, Duration.ofSeconds(15), Duration.ofSeconds(60), Duration.ofNanos(1));
+
+        StepVerifier.create(sessions.open(exchange("10.0.0.1"), MovieInfoStreamSessions.Heartbeat.NDJSON, frames("a\n")))
+                .expectNextCount(1)
+                .then(sessions::sweep)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,118 @@
+package com.reactivespring.unit;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.reactivespring.config.MovieInfoResilienceProperties;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exceptions.MovieInfoStoreUnavailableException;
+import com.reactivespring.metrics.ReactiveTimers;
+import com.reactivespring.resilience.MovieInfoStoreResilience;
+import com.reactivespring.service.MovieInfoWriteBatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MovieInfoWriteBatcherTest {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> collection = mock(MongoCollection.class);
+
+    // documents of every insertMany
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    private MovieInfoWriteBatcher batcher(Duration window, int maxSize, int maxPending, List<BulkWriteError> errors) {
+        when(reactiveMongoTemplate.getConverter()).thenReturn(mock(MongoConverter.class));
+        when(reactiveMongoTemplate.getCollectionName(MovieInfo.class)).thenReturn("movieInfo");
+        when(reactiveMongoTemplate.getCollection("movieInfo")).thenReturn(Mono.just(collection));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+            batchSizes.add(invocation.<List<WriteModel<Document>>>getArgument(0).size());
+            return errors.isEmpty()
+                    ? Mono.just(mock(BulkWriteResult.class))
+                    : Mono.error(new MongoBulkWriteException(mock(BulkWriteResult.class), errors, null, new ServerAddress()));
+        });
+        var properties = new MovieInfoResilienceProperties();
+        return new MovieInfoWriteBatcher(reactiveMongoTemplate, new ReactiveTimers(new SimpleMeterRegistry()),
+                new MovieInfoStoreResilience(properties), true, window, maxSize, maxPending);
+    }
+
+    private static MovieInfo movieInfo(String id) {
+        return new MovieInfo(id, "movie " + id, 2002, List.of("nag"), LocalDate.parse("2005-06-01"));
+    }
+
+    @Test
+    void concurrentInsertsShareOneWrite() {
+        var batcher = batcher(Duration.ofMillis(50), 100, 100, List.of());
+
+        StepVerifier.create(Flux.merge(batcher.insert(movieInfo("a")), batcher.insert(movieInfo(null)), batcher.insert(movieInfo("c"))))
+                .recordWith(CopyOnWriteArrayList::new)
+                .expectNextCount(3)
+                .consumeRecordedWith(saved -> saved.forEach(movieInfo -> {
+                    assertNotNull(movieInfo.getMovieInfoId());
+                    assertEquals(0L, movieInfo.getVersion());
+                }))
+                .verifyComplete();
+
+        assertEquals(List.of(3), batchSizes);
+    }
+
+    @Test
+    void fullBatchIsWrittenBeforeTheWindowEnds() {
+        var batcher = batcher(Duration.ofSeconds(30), 2, 100, List.of());
+
+        StepVerifier.create(Flux.merge(batcher.insert(movieInfo("a")), batcher.insert(movieInfo("b"))))
+                .expectNextCount(2)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void duplicateFailsOnlyItsOwnInsert() {
+        var duplicate = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 1);
+        var batcher = batcher(Duration.ofSeconds(30), 2, 100, List.of(duplicate));
+
+        var first = batcher.insert(movieInfo("a")).cache();
+        var second = batcher.insert(movieInfo("a")).cache();
+        first.subscribe(movieInfo -> {}, ex -> {});
+
+        StepVerifier.create(second).expectError(DuplicateKeyException.class).verify(Duration.ofSeconds(5));
+        StepVerifier.create(first.map(MovieInfo::getMovieInfoId)).expectNext("a").verifyComplete();
+        assertEquals(List.of(2), batchSizes);
+    }
+
+    @Test
+    void insertsOverMaxPendingAreRefused() {
+        var batcher = batcher(Duration.ofSeconds(30), 100, 1, List.of());
+
+        batcher.insert(movieInfo("a")).subscribe();
+
+        StepVerifier.create(batcher.insert(movieInfo("b")))
+                .expectError(MovieInfoStoreUnavailableException.class)
+                .verify();
+    }
+}
@@ -1,26 +1,43 @@
 package com.reactivespring.unit;
 
 
+import com.reactivespring.cache.MovieInfoWatermarks;
 import com.reactivespring.controller.MovieInfoController;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoChangeType;
+import com.reactivespring.domain.MovieInfoWatermark;
+import com.reactivespring.exceptions.MovieInfoVersionConflictException;
 import com.reactivespring.service.MovieInfoService;
+import com.reactivespring.stream.MovieInfoChangeStream;
+import com.reactivespring.stream.MovieInfoStreamEncoder;
+import com.reactivespring.stream.MovieInfoStreamSessions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import static com.reactivespring.intg.controller.MoviesInfoControllerIntgTest.MOVIE_INFO_URL;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = MovieInfoController.class)
@@ -30,9 +47,26 @@ public class MoviesInfoControllerUnitTest {
     @MockBean
     private MovieInfoService movieInfoServiceMock;
 
+    @MockBean
+    private MovieInfoChangeStream movieInfoChangeStreamMock;
+
+    @MockBean
+    private MovieInfoWatermarks movieInfoWatermarksMock;
+
+    @MockBean
+    private MovieInfoStreamEncoder movieInfoStreamEncoderMock;
+
+    @MockBean
+    private MovieInfoStreamSessions movieInfoStreamSessionsMock;
+
     @Autowired
     private WebTestClient webTestClient;
 
+    @BeforeEach
+    void setUp() {
+        when(movieInfoWatermarksMock.forYear(any())).thenReturn(new MovieInfoWatermark("W/\"test.1\"", Instant.EPOCH));
+    }
+
 
     @Test
     void getAllMoviesInfo(){
@@ -106,7 +140,7 @@ public class MoviesInfoControllerUnitTest {
         var movieInfo = new MovieInfo(null, "Batman Begins",
                 2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
 
-        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class) , isA(String.class))).thenReturn(Mono.just(
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class) , isA(String.class), isNull())).thenReturn(Mono.just(
                 new MovieInfo(movieId, "Batman Begins",
                         2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"))));
 
@@ -126,6 +160,176 @@ public class MoviesInfoControllerUnitTest {
                 });
     }
 
+    @Test
+    void updateMovieInfo_ifMatch() {
+
+        var movieId = "xyz";
+
+        var movieInfo = new MovieInfo(null, "Batman Begins",
+                2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class) , isA(String.class), eq(Set.of(3L)))).thenReturn(Mono.just(
+                new MovieInfo(movieId, "Batman Begins",
+                        2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"), 4L, null)));
+
+        webTestClient
+                .put()
+                .uri(MOVIE_INFO_URL+"/{id}" , movieId)
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"4\"");
+    }
+
+    @Test
+    void updateMovieInfo_ifMatchList() {
+
+        var movieId = "xyz";
+
+        var movieInfo = new MovieInfo(null, "Batman Begins",
+                2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class) , isA(String.class), eq(Set.of(1L, 3L)))).thenReturn(Mono.just(
+                new MovieInfo(movieId, "Batman Begins",
+                        2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"), 4L, null)));
+
+        // any tag of the list may match, tags that are no version of ours are left out
+        webTestClient
+                .put()
+                .uri(MOVIE_INFO_URL+"/{id}" , movieId)
+                .header(HttpHeaders.IF_MATCH, "\"1\", \"three\", W/\"3\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"4\"");
+
+        // not a list of entity-tags
+        webTestClient
+                .put()
+                .uri(MOVIE_INFO_URL+"/{id}" , movieId)
+                .header(HttpHeaders.IF_MATCH, "\"1\" \"3\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(412);
+    }
+
+    @Test
+    void updateMovieInfo_versionConflict() {
+
+        var movieId = "xyz";
+
+        var movieInfo = new MovieInfo(null, "Batman Begins",
+                2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class) , isA(String.class), eq(Set.of(3L))))
+                .thenReturn(Mono.error(new MovieInfoVersionConflictException("MovieInfo xyz is no longer at version 3")));
+
+        webTestClient
+                .put()
+                .uri(MOVIE_INFO_URL+"/{id}" , movieId)
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(412);
+
+        // the weak form asks for the same version, a deliberate weak comparison: every ETag of ours is weak
+        webTestClient
+                .put()
+                .uri(MOVIE_INFO_URL+"/{id}" , movieId)
+                .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(412);
+
+        // a malformed tag can never match
+        webTestClient
+                .put()
+                .uri(MOVIE_INFO_URL+"/{id}" , movieId)
+                .header(HttpHeaders.IF_MATCH, "\"three\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(412);
+    }
+
+    @Test
+    void patchMovieInfo() {
+
+        var movieId = "xyz";
+
+        var changes = new MovieInfo();
+        changes.setYear(2006);
+
+        when(movieInfoServiceMock.patchMovieInfoById(isA(MovieInfo.class) , isA(String.class), isNull())).thenReturn(Mono.just(
+                new MovieInfo(movieId, "Batman Begins",
+                        2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"), 1L, null)));
+
+        webTestClient
+                .patch()
+                .uri(MOVIE_INFO_URL+"/{id}" , movieId)
+                .bodyValue(changes)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.year").isEqualTo(2006)
+                .jsonPath("$.name").isEqualTo("Batman Begins");
+    }
+
+    @Test
+    void updateMovieInfo_invalid() {
+
+        var movieInfo = new MovieInfo(null, "",
+                -2006, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+
+        webTestClient
+                .put()
+                .uri(MOVIE_INFO_URL+"/{id}" , "xyz")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo.name must be present,MovieInfo.year must be Positive value");
+    }
+
+    @Test
+    void patchMovieInfo_onlyPresentFieldsValidated() {
+
+        var blankName = new MovieInfo();
+        blankName.setName(" ");
+        blankName.setCast(List.of(""));
+
+        webTestClient
+                .patch()
+                .uri(MOVIE_INFO_URL+"/{id}" , "xyz")
+                .bodyValue(blankName)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo.cast must be present,MovieInfo.name must be present");
+
+        var negativeYear = new MovieInfo();
+        negativeYear.setYear(-2006);
+
+        webTestClient
+                .patch()
+                .uri(MOVIE_INFO_URL+"/{id}" , "xyz")
+                .bodyValue(negativeYear)
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("MovieInfo.year must be Positive value");
+    }
+
     @Test
     void addNewMovieInfoNegativeYearNameTest() {
 
@@ -179,7 +383,7 @@ public class MoviesInfoControllerUnitTest {
         var movieInfo = new MovieInfo(null, "Batman Begins",
                 2006, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
 
-        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class) , isA(String.class)))
+        when(movieInfoServiceMock.updateMovieInfoById(isA(MovieInfo.class) , isA(String.class), isNull()))
                 .thenReturn(Mono.empty());
 
         webTestClient
@@ -206,4 +410,31 @@ public class MoviesInfoControllerUnitTest {
                 .isNotFound();
     }
 
+    @Test
+    void getMovieInfoById_mongoUnavailable() {
+
+        when(movieInfoServiceMock.getMovieInfoById(isA(String.class)))
+                .thenReturn(Mono.error(new DataAccessResourceFailureException("Timed out after 1000 ms while waiting for a connection")));
+        webTestClient
+                .get()
+                .uri(MOVIE_INFO_URL+"/{id}" , "xyz")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(503)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "1");
+    }
+
+    @Test
+    void deleteMovieInfo_onlyRecordedWhenSomethingWasDeleted() {
+
+        when(movieInfoServiceMock.deleteMovieById("gone")).thenReturn(Mono.just(0L));
+        when(movieInfoServiceMock.deleteMovieById("xyz")).thenReturn(Mono.just(1L));
+
+        webTestClient.delete().uri(MOVIE_INFO_URL+"/{id}" , "gone").exchange().expectStatus().is2xxSuccessful();
+        verify(movieInfoChangeStreamMock, never()).recordLocalChange(eq(MovieInfoChangeType.DELETE), any());
+
+        webTestClient.delete().uri(MOVIE_INFO_URL+"/{id}" , "xyz").exchange().expectStatus().is2xxSuccessful();
+        verify(movieInfoChangeStreamMock).recordLocalChange(eq(MovieInfoChangeType.DELETE), any());
+    }
+
 }
@@ -0,0 +1,48 @@
+package com.reactivespring.unit;
+
+import com.reactivespring.metrics.ReactiveTimers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReactiveTimersTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ReactiveTimers timers = new ReactiveTimers(meterRegistry);
+
+    private long count(String method, String outcome) {
+        return meterRegistry.get(ReactiveTimers.SERVICE)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .timer()
+                .count();
+    }
+
+    @Test
+    void timesEverySubscription() {
+        var mono = timers.time(ReactiveTimers.SERVICE, "getMovieInfoById", Mono.just("xyz"));
+
+        StepVerifier.create(mono).expectNext("xyz").verifyComplete();
+        StepVerifier.create(mono).expectNext("xyz").verifyComplete();
+
+        assertEquals(2, count("getMovieInfoById", "success"));
+    }
+
+    @Test
+    void tagsErrorsAndCancellation() {
+        StepVerifier.create(timers.time(ReactiveTimers.SERVICE, "addMovieInfo", Mono.error(new IllegalStateException())))
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(timers.time(ReactiveTimers.SERVICE, "getAllMovieInfos", Flux.range(0, 10)))
+                .expectNext(0)
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, count("addMovieInfo", "error"));
+        assertEquals(1, count("getAllMovieInfos", "cancelled"));
+    }
+}